@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timing of the phases of {@link FreeAtHome#connectAsync(FreeAtHomeConfiguration)}; phases running in parallel overlap.
+ */
+public class FahStartupReport {
+
+	private final long startNanos = System.nanoTime();
+	private final List<Phase> phases = new ArrayList<>();
+	private volatile long endNanos;
+
+	public FahStartupReport() {
+		super();
+	}
+
+	public synchronized List<Phase> getPhases() {
+		return Collections.unmodifiableList(new ArrayList<>(phases));
+	}
+
+	/**
+	 * @return Time from the start of the connect until it completed; <code>-1</code> while still connecting.
+	 */
+	public long getTotalMillis() {
+		long currentEndNanos = endNanos;
+		return currentEndNanos != 0 ? TimeUnit.NANOSECONDS.toMillis(currentEndNanos - startNanos) : -1;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("Startup in ").append(getTotalMillis()).append("ms:");
+		for (Phase phase : phases) {
+			sb.append(' ').append(phase);
+		}
+		return sb.toString();
+	}
+
+	void completed() {
+		endNanos = System.nanoTime();
+	}
+
+	<T> T call(String name, Supplier<T> supplier) {
+		long phaseStartNanos = System.nanoTime();
+		try {
+			return supplier.get();
+		} finally {
+			long phaseEndNanos = System.nanoTime();
+			synchronized (this) {
+				phases.add(new Phase(name, TimeUnit.NANOSECONDS.toMillis(phaseStartNanos - startNanos),
+									 TimeUnit.NANOSECONDS.toMillis(phaseEndNanos - phaseStartNanos)
+				));
+			}
+		}
+	}
+
+	void run(String name, Runnable runnable) {
+		call(name, () -> {
+			runnable.run();
+			return null;
+		});
+	}
+
+	public static final class Phase {
+
+		private final String name;
+		private final long startMillis;
+		private final long durationMillis;
+
+		private Phase(String name, long startMillis, long durationMillis) {
+			this.name = name;
+			this.startMillis = startMillis;
+			this.durationMillis = durationMillis;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Offset from the start of the connect.
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		@Override
+		public String toString() {
+			return name + "@" + startMillis + "+" + durationMillis + "ms";
+		}
+
+	}
+
+}
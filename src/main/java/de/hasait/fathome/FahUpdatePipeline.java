@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded hand-off of inbound update payloads from the XMPP reader thread to a worker.
+ * <p>
+ * {@link #submit(Object)} never blocks: if the queue is full the oldest pending payload is dropped. As the state derived from
+ * the payloads is then incomplete, the overflow handler runs once per overflow, i.e. until the queue has been drained again,
+ * so that the owner can resynchronize. At most one drain task is
+ * scheduled on the executor at any time, so payloads are processed one after the other in arrival order.
+ * <p>
+ * Each payload is stamped with its receive time on submit and passed to the processor with it, so the time stays accurate
+ * however long the payload waits in the queue.
+ * <p>
+ * Payloads are processed in batches: a batch consists of all payloads pending when it starts, and the batch completion callback
+ * runs after each batch. If processing falls behind, batches grow, which lets the callback coalesce work across payloads.
+ */
+public class FahUpdatePipeline<T> {
+
+	private static final Logger log = LoggerFactory.getLogger(FahUpdatePipeline.class);
+
+	private final int capacity;
+	private final BlockingQueue<Received<T>> queue;
+	private final Executor executor;
+	private final ObjLongConsumer<T> processor;
+	private final Runnable batchCompletion;
+	private final Runnable overflowHandler;
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final AtomicBoolean overflowing = new AtomicBoolean();
+
+	private final LongAdder submittedCount = new LongAdder();
+	private final LongAdder processedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+	private final LongAdder overflowCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	public FahUpdatePipeline(int capacity, Executor executor, ObjLongConsumer<T> processor) {
+		this(capacity, executor, processor, () -> {
+		});
+	}
+
+	public FahUpdatePipeline(int capacity, Executor executor, ObjLongConsumer<T> processor, Runnable batchCompletion) {
+		this(capacity, executor, processor, batchCompletion, () -> {
+		});
+	}
+
+	/**
+	 * @param overflowHandler Runs on the submitting thread when payloads start being dropped; must not block.
+	 */
+	public FahUpdatePipeline(int capacity, Executor executor, ObjLongConsumer<T> processor, Runnable batchCompletion,
+							 Runnable overflowHandler) {
+		super();
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.executor = executor;
+		this.processor = processor;
+		this.batchCompletion = batchCompletion;
+		this.overflowHandler = overflowHandler;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return Number of payloads discarded because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * @return Number of payloads whose processing threw an exception.
+	 */
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	/**
+	 * @return Number of submits that found the queue full.
+	 */
+	public long getOverflowCount() {
+		return overflowCount.sum();
+	}
+
+	public long getProcessedCount() {
+		return processedCount.sum();
+	}
+
+	/**
+	 * @return Number of payloads currently waiting for processing.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.sum();
+	}
+
+	/**
+	 * Enqueue a payload for processing; never blocks.
+	 */
+	public void submit(T payload) {
+		submittedCount.increment();
+		boolean overflow = false;
+		boolean dropped = false;
+		Received<T> received = new Received<>(payload, System.currentTimeMillis());
+		while (!queue.offer(received)) {
+			if (!overflow) {
+				overflowCount.increment();
+				overflow = true;
+			}
+			if (queue.poll() != null) {
+				droppedCount.increment();
+				dropped = true;
+			}
+		}
+		if (dropped) {
+			handleOverflow();
+		}
+		scheduleDrain();
+	}
+
+	private void completeBatch() {
+		try {
+			batchCompletion.run();
+		} catch (RuntimeException e) {
+			log.warn("Could not complete update batch", e);
+		}
+	}
+
+	private void drain() {
+		try {
+			int batchSize;
+			while ((batchSize = queue.size()) > 0) {
+				for (int i = 0; i < batchSize; i++) {
+					Received<T> received = queue.poll();
+					if (received == null) {
+						break;
+					}
+					process(received);
+				}
+				completeBatch();
+			}
+			overflowing.set(false);
+		} finally {
+			drainScheduled.set(false);
+		}
+		// a payload may have been enqueued after the last poll but before the flag was reset
+		if (!queue.isEmpty()) {
+			scheduleDrain();
+		}
+	}
+
+	private void handleOverflow() {
+		if (overflowing.compareAndSet(false, true)) {
+			log.warn("Update queue full (capacity " + capacity + "), dropping updates");
+			try {
+				overflowHandler.run();
+			} catch (RuntimeException e) {
+				log.warn("Could not handle update queue overflow", e);
+			}
+		}
+	}
+
+	private void process(Received<T> received) {
+		try {
+			processor.accept(received.payload, received.receivedMillis);
+			processedCount.increment();
+		} catch (RuntimeException e) {
+			failedCount.increment();
+			log.warn("Could not process update", e);
+		}
+	}
+
+	private void scheduleDrain() {
+		if (drainScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				drainScheduled.set(false);
+				log.warn("Update executor rejected drain task", e);
+			}
+		}
+	}
+
+	private static final class Received<T> {
+
+		private final T payload;
+		private final long receivedMillis;
+
+		private Received(T payload, long receivedMillis) {
+			this.payload = payload;
+			this.receivedMillis = receivedMillis;
+		}
+
+	}
+
+}
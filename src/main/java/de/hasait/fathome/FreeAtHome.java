@@ -16,13 +16,33 @@
 
 package de.hasait.fathome;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -34,8 +54,11 @@
 import rocks.xmpp.core.XmppException;
 import rocks.xmpp.core.net.ChannelEncryption;
 import rocks.xmpp.core.net.client.SocketConnectionConfiguration;
+import rocks.xmpp.core.session.ConnectionEvent;
 import rocks.xmpp.core.session.Extension;
+import rocks.xmpp.core.session.ReconnectionStrategy;
 import rocks.xmpp.core.session.XmppClient;
+import rocks.xmpp.core.session.XmppSession;
 import rocks.xmpp.core.session.XmppSessionConfiguration;
 import rocks.xmpp.core.session.debug.ConsoleDebugger;
 import rocks.xmpp.core.stanza.MessageEvent;
@@ -50,17 +73,31 @@
 import rocks.xmpp.im.subscription.PresenceManager;
 import rocks.xmpp.util.concurrent.AsyncResult;
 
+import de.hasait.fathome.comm.FahBatchingCommunication;
+import de.hasait.fathome.comm.FahBufferingCommunication;
 import de.hasait.fathome.comm.FahCommunication;
 import de.hasait.fathome.comm.FahCryptContext;
+import de.hasait.fathome.comm.FahRateLimitedCommunication;
+import de.hasait.fathome.comm.FahRpcLane;
 import de.hasait.fathome.comm.FahUser;
 import de.hasait.fathome.comm.FahUserJsonProcessor;
 import de.hasait.fathome.project.AbstractFahChannel;
+import de.hasait.fathome.project.FahBinaryProcessor;
 import de.hasait.fathome.project.FahChannelFactory;
+import de.hasait.fathome.project.FahConfirmationTracker;
+import de.hasait.fathome.project.FahDataPointCommand;
+import de.hasait.fathome.project.FahDataPointListener;
 import de.hasait.fathome.project.FahDevice;
 import de.hasait.fathome.project.FahDeviceProcessor;
 import de.hasait.fathome.project.FahFloor;
 import de.hasait.fathome.project.FahFunction;
+import de.hasait.fathome.project.FahListenerRegistration;
+import de.hasait.fathome.project.FahListenerRegistry;
+import de.hasait.fathome.project.FahParameterListener;
 import de.hasait.fathome.project.FahProject;
+import de.hasait.fathome.project.FahProjectUpdateHandler;
+import de.hasait.fathome.project.FahUpdateCoalescer;
+import de.hasait.fathome.project.FahUpdateHandler;
 import de.hasait.fathome.project.FahXmlProcessor;
 import de.hasait.fathome.things.FahBlind;
 import de.hasait.fathome.things.FahDimmer;
@@ -78,11 +115,29 @@ public class FreeAtHome {
 
 	private static final Logger log = LoggerFactory.getLogger(FreeAtHome.class);
 
+	private static final ReconnectionStrategy RECONNECTION_STRATEGY = ReconnectionStrategy
+			.alwaysRandomlyAfter(Duration.ofSeconds(1), Duration.ofSeconds(5));
+
+	private static final String WARM_UP_PROJECT_XML = "<project>" //
+			+ "<strings><string nameId=\"0001\">warmUp</string></strings>" //
+			+ "<definitions><functions>" //
+			+ "<function nameId=\"0001\" functionId=\"7\" name=\"FID_SwitchingActuator\"/>" //
+			+ "</functions></definitions>" //
+			+ "<devices><device serialNumber=\"warmUp\" nameId=\"0001\"><attribute name=\"displayName\">warmUp</attribute>" //
+			+ "<channels><channel i=\"ch0000\"><attribute name=\"functionId\">7</attribute>" //
+			+ "<inputs><dataPoint i=\"idp0000\"><value>0</value></dataPoint></inputs></channel></channels>" //
+			+ "<parameters><parameter i=\"pm0000\"><value>0</value></parameter></parameters>" //
+			+ "</device></devices></project>";
+	private static final String WARM_UP_UPDATE_XML = "<project type=\"update\"><devices>" //
+			+ "<device serialNumber=\"warmUp\"><channels><channel i=\"ch0000\">" //
+			+ "<inputs><dataPoint i=\"idp0000\"><value>1</value></dataPoint></inputs>" //
+			+ "</channel></channels></device></devices></project>";
+
 	private final Map<String, FahChannelFactory> channelFactoriesByFidName = new HashMap<>();
 	private final Map<Integer, FahChannelFactory> channelFactoriesByFunctionId = new HashMap<>();
 	private final List<FahDeviceProcessor> deviceProcessors = new ArrayList<>();
 
-	private final FahCommunication communication = new FahCommunication() {
+	private final FahCommunication xmppCommunication = new FahCommunication() {
 		@Override
 		public Value rpcCall(String methodName, Value... parameters) {
 			try {
@@ -93,6 +148,29 @@ public Value rpcCall(String methodName, Value... parameters) {
 				throw new RuntimeException(e);
 			}
 		}
+
+		@Override
+		public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+			RpcManager rpcManager = xmppClient.getManager(RpcManager.class);
+			return rpcManager.call(rpcJid, methodName, parameters).toCompletableFuture();
+		}
+	};
+
+	private volatile FahCommunication rpcTransport = xmppCommunication;
+	private volatile FahRateLimitedCommunication rpcRateLimiter;
+	private volatile FahBatchingCommunication rpcBatching;
+	private volatile FahBufferingCommunication commandBuffer;
+
+	private final FahCommunication communication = new FahCommunication() {
+		@Override
+		public Value rpcCall(String methodName, Value... parameters) {
+			return rpcTransport.rpcCall(methodName, parameters);
+		}
+
+		@Override
+		public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+			return rpcTransport.rpcCallAsync(methodName, parameters);
+		}
 	};
 
 	private final FahChannelFactory channelFactory = (device, id, function) -> {
@@ -103,12 +181,33 @@ public Value rpcCall(String methodName, Value... parameters) {
 		return new FahUnknown(device, id, function);
 	};
 
-	private XmppClient xmppClient;
+	private volatile XmppClient xmppClient;
 	private String updateNamespace;
 	private Jid rpcJid;
 	private FahCryptContext cryptContext;
-	private FahUser user;
-	private FahProject project = new FahProject(communication);
+	private volatile FahUser user;
+	private volatile String password;
+	private volatile long disconnectedNanos;
+	private final LongAdder reconnectCount = new LongAdder();
+	private final FahListenerRegistry listenerRegistry = new FahListenerRegistry();
+	private final FahUpdateCoalescer updateCoalescer = new FahUpdateCoalescer();
+	private FahUpdatePipeline<Element> updatePipeline;
+	/**
+	 * Executors created by {@link #connectAsync(FreeAtHomeConfiguration)}, shut down by {@link #disconnect()}.
+	 */
+	private final List<ExecutorService> ownedExecutors = new ArrayList<>();
+	private final AtomicBoolean overflowResyncRequested = new AtomicBoolean();
+	private final AtomicBoolean overflowResyncRunning = new AtomicBoolean();
+	private volatile Path projectCacheFile;
+	private CompletableFuture<Void> backgroundLoad = CompletableFuture.completedFuture(null);
+	private final FahProject project = new FahProject(communication, listenerRegistry);
+	private volatile FahStartupReport startupReport;
+	private final Object updateLock = new Object();
+	private final Object loadLock = new Object();
+	/**
+	 * Updates applied while loading the project; guarded by {@link #updateLock}.
+	 */
+	private FahUpdateCoalescer loadUpdates;
 
 	public FreeAtHome() {
 		super();
@@ -123,70 +222,202 @@ public FreeAtHome() {
 
 	public void connect(FreeAtHomeConfiguration configuration) {
 		try {
-			String fahUsername = configuration.getUsername();
-			String fahPassword = configuration.getPassword();
-			String fahSysApHostname = configuration.getHostOrIp();
-
-			String xmppDomain = "busch-jaeger.de";
-			updateNamespace = "http://abb.com/protocol/update";
-			rpcJid = Jid.of("mrha@" + xmppDomain + "/rpc");
+			connectAsync(configuration).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		}
+	}
 
-			CloseableHttpClient httpClient = HttpClients.createDefault();
-			Map<String, FahUser> fahUsers = new TreeMap<>();
-			try {
+	/**
+	 * Connect without blocking. Independent steps overlap: the parsers are warmed up and the XMPP connection is established while
+	 * <code>settings.json</code> is fetched and then the cached project of the SysAP is read; login follows once they are done.
+	 * The project itself is not parsed while it arrives, as <code>getAll</code> returns it as a single string.
+	 *
+	 * @return Completes when the project has been loaded, or when the cached project is used and the project is being reloaded
+	 * in the background, see {@link #getBackgroundLoad()}. The phases are timed in {@link #getStartupReport()}.
+	 */
+	public CompletableFuture<Void> connectAsync(FreeAtHomeConfiguration configuration) {
+		FahStartupReport report = new FahStartupReport();
+		startupReport = report;
+
+		String fahUsername = configuration.getUsername();
+		String fahPassword = configuration.getPassword();
+		String fahSysApHostname = configuration.getHostOrIp();
+
+		Path projectCacheDirectory = configuration.getProjectCacheDirectory();
+		projectCacheFile = null;
+
+		String xmppDomain = "busch-jaeger.de";
+		updateNamespace = "http://abb.com/protocol/update";
+		rpcJid = Jid.of("mrha@" + xmppDomain + "/rpc");
+
+		// the transport chain of a previous connect is replaced, features disabled now must not stay visible
+		FahBufferingCommunication previousCommandBuffer = commandBuffer;
+		if (previousCommandBuffer != null) {
+			previousCommandBuffer.close();
+		}
+		FahBatchingCommunication previousRpcBatching = rpcBatching;
+		if (previousRpcBatching != null) {
+			previousRpcBatching.flush();
+		}
+		commandBuffer = null;
+		rpcBatching = null;
+		rpcRateLimiter = null;
+		shutdownOwnedExecutors();
+
+		Executor updateExecutor = configuration.getUpdateExecutor();
+		if (updateExecutor == null) {
+			updateExecutor = own(Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "fah-update");
+				thread.setDaemon(true);
+				return thread;
+			}));
+		}
+		updatePipeline = new FahUpdatePipeline<>(configuration.getUpdateQueueCapacity(), updateExecutor, this::processUpdateElement,
+												this::applyCoalescedUpdates, this::requestOverflowResync
+		);
+
+		long rpcBatchWindowMillis = configuration.getRpcBatchWindowMillis();
+		double rpcRateLimitPerSecond = configuration.getRpcRateLimitPerSecond();
+		ScheduledExecutorService rpcScheduler = null;
+		if (rpcBatchWindowMillis > 0 || rpcRateLimitPerSecond > 0) {
+			rpcScheduler = own(Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "fah-rpc");
+				thread.setDaemon(true);
+				return thread;
+			}));
+		}
+		FahCommunication transport = xmppCommunication;
+		if (rpcBatchWindowMillis > 0) {
+			rpcBatching = new FahBatchingCommunication(transport, rpcScheduler, rpcBatchWindowMillis,
+													   configuration.getRpcBatchMaxSize()
+			);
+			transport = rpcBatching;
+		}
+		boolean reconnectEnabled = configuration.isReconnectEnabled();
+		if (reconnectEnabled) {
+			commandBuffer = new FahBufferingCommunication(transport, configuration.getCommandBufferCapacity());
+			transport = commandBuffer;
+		}
+		if (rpcRateLimitPerSecond > 0) {
+			rpcRateLimiter = new FahRateLimitedCommunication(transport, rpcScheduler, rpcRateLimitPerSecond,
+															 configuration.getRpcRateLimitBurst()
+			);
+			transport = rpcRateLimiter;
+		}
+		rpcTransport = transport;
+
+		ExecutorService connectExecutor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "fah-connect");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		Map<String, String> sysApFlags = new HashMap<>();
+		CompletableFuture<Map<String, FahUser>> fahUsers = CompletableFuture
+				.supplyAsync(() -> report.call("settings", () -> fetchSettings(fahSysApHostname, sysApFlags)), connectExecutor);
+		// the cache is keyed by the identity and version of the SysAP, which settings.json provides
+		CompletableFuture<Boolean> cachedProjectUsed = fahUsers.thenApplyAsync(users -> {
+			if (projectCacheDirectory == null) {
+				return false;
+			}
+			projectCacheFile = projectCacheDirectory.resolve(projectCacheFileName(fahSysApHostname, sysApFlags));
+			return report.call("readCache", this::readCachedProject);
+		}, connectExecutor);
+		CompletableFuture.runAsync(() -> report.run("warmUp", this::warmUp), connectExecutor);
+		CompletableFuture<XmppClient> connectedClient = CompletableFuture.supplyAsync(() -> {
+			XmppClient client = report.call("xmppCreate", () -> {
+				SocketConnectionConfiguration connectionConfiguration = //
+						SocketConnectionConfiguration.builder() //
+													 .hostname(fahSysApHostname) //
+													 .port(5222) //
+													 .channelEncryption(ChannelEncryption.OPTIONAL) //
+													 .build();
+
+				XmppSessionConfiguration sessionConfiguration = //
+						XmppSessionConfiguration.builder() //
+												.extensions(Extension.of(updateNamespace, null, true, true),
+															Extension.of(updateNamespace, null, true)
+												) //
+												.debugger(ConsoleDebugger.class) //
+												.reconnectionStrategy(reconnectEnabled ? RECONNECTION_STRATEGY : ReconnectionStrategy.none()) //
+												.build();
+
+				return XmppClient.create(xmppDomain, sessionConfiguration, connectionConfiguration);
+			});
+			xmppClient = client;
+			client.addInboundPresenceListener(this::handlePresenceEvent);
+			client.addConnectionListener(this::handleConnectionEvent);
+			report.run("xmppConnect", () -> {
 				try {
-					HttpUtil.httpGet(httpClient, "http://" + fahSysApHostname + "/settings.json", new AsStringContentHandler(
-							contentString -> FahUserJsonProcessor.processSettingsJson(contentString, fahUsers)));
-				} catch (IOException e) {
+					client.connect();
+				} catch (XmppException e) {
 					throw new RuntimeException(e);
 				}
-			} finally {
-				HttpClientUtils.closeQuietly(httpClient);
-			}
-
-			if (!fahUsers.containsKey(fahUsername)) {
-				throw new IllegalArgumentException("Invalid username: " + fahUsername + " not in " + fahUsers.keySet());
-			}
+			});
+			return client;
+		}, connectExecutor);
 
-			user = fahUsers.get(fahUsername);
-			Jid userJid = Jid.of(user.getJid());
-			String xmppUsername = userJid.getLocal();
-			log.info("Login using " + xmppUsername + "...");
+		CompletableFuture<Void> connected = connectedClient.thenCombine(fahUsers, (client, users) -> {
+			report.run("login", () -> login(client, users, fahUsername, fahPassword));
+			return client;
+		}).thenCombine(cachedProjectUsed, (client, cacheUsed) -> {
+			client.addInboundMessageListener(this::handleInboundMessage);
 
-			SocketConnectionConfiguration connectionConfiguration = //
-					SocketConnectionConfiguration.builder() //
-												 .hostname(fahSysApHostname) //
-												 .port(5222) //
-												 .channelEncryption(ChannelEncryption.OPTIONAL) //
-												 .build();
+			report.run("presence", () -> sendPresence(client));
 
-			XmppSessionConfiguration sessionConfiguration = //
-					XmppSessionConfiguration.builder() //
-											.extensions(Extension.of(updateNamespace, null, true, true),
-														Extension.of(updateNamespace, null, true)
-											) //
-											.debugger(ConsoleDebugger.class) //
-											.build();
-
-			xmppClient = XmppClient.create(xmppDomain, sessionConfiguration, connectionConfiguration);
+			// initCryptContext(user, fahPassword);
 
-			xmppClient.addInboundPresenceListener(this::handlePresenceEvent);
+			if (cacheUsed) {
+				backgroundLoad = loadAllInBackground();
+			} else {
+				loadAll(report);
+			}
+			return null;
+		});
 
-			xmppClient.connect();
-			xmppClient.login(xmppUsername, fahPassword);
+		return connected.whenComplete((ignored, failure) -> {
+			connectExecutor.shutdown();
+			report.completed();
+			if (failure == null) {
+				log.info(report.toString());
+			} else {
+				close();
+			}
+		});
+	}
 
-			xmppClient.addInboundMessageListener(this::handleInboundMessage);
+	/**
+	 * Close the connection to the SysAP and stop the threads started by {@link #connectAsync(FreeAtHomeConfiguration)}; an
+	 * executor passed via {@link FreeAtHomeConfiguration#getUpdateExecutor()} is left running. Commands buffered for a reconnect
+	 * fail.
+	 */
+	public void disconnect() {
+		close();
+	}
 
-			Presence presence = new Presence(rpcJid, Presence.Type.SUBSCRIBE, null, null, null, null, userJid, null, null, null);
-			xmppClient.send(presence);
-			xmppClient.send(new Presence());
+	/**
+	 * Listen to all datapoints of all channels; stays registered across reloads.
+	 */
+	public FahListenerRegistration addDataPointListener(FahDataPointListener listener) {
+		return listenerRegistry.addDataPointListener(listener);
+	}
 
-			// initCryptContext(user, fahPassword);
+	/**
+	 * Listen to all parameters of all devices; stays registered across reloads.
+	 */
+	public FahListenerRegistration addParameterListener(FahParameterListener listener) {
+		return listenerRegistry.addParameterListener(listener);
+	}
 
-			loadAll();
-		} catch (XmppException e) {
-			throw new RuntimeException(e);
-		}
+	/**
+	 * @return Command for repeated writes of the datapoint of the named channel, see {@link FahDataPointCommand};
+	 * <code>null</code> if there is no such channel.
+	 */
+	public FahDataPointCommand createDataPointCommand(String channelName, String dataPointId) {
+		AbstractFahChannel channel = project.getChannel(channelName);
+		return channel != null ? channel.createDataPointCommand(dataPointId) : null;
 	}
 
 	public Collection<AbstractFahChannel> getAllChannels() {
@@ -210,6 +441,28 @@ public <T extends AbstractFahChannel> T getChannel(String name, Class<T> type) {
 		return type.isInstance(channel) ? (T) channel : null;
 	}
 
+	/**
+	 * @return Completes when the project served from the local cache has been reconciled with the result of
+	 * <code>RemoteInterface.getAll</code>; already completed if the cache was not used.
+	 */
+	public CompletableFuture<Void> getBackgroundLoad() {
+		return backgroundLoad;
+	}
+
+	/**
+	 * @return Buffer of commands issued while reconnecting; <code>null</code> if reconnecting is disabled.
+	 */
+	public FahBufferingCommunication getCommandBuffer() {
+		return commandBuffer;
+	}
+
+	/**
+	 * @return Confirmation tracking of writes to {@link AbstractFahChannel#setOptimistic(boolean) optimistic} channels.
+	 */
+	public FahConfirmationTracker getConfirmationTracker() {
+		return project.getConfirmationTracker();
+	}
+
 	public FahDevice getDevice(String serialNumber) {
 		return project.getDeviceBySerialNumber(serialNumber);
 	}
@@ -218,14 +471,57 @@ public FahDimmer getDimmer(String name) {
 		return getChannel(name, FahDimmer.class);
 	}
 
+	/**
+	 * @return Registry for listeners on specific devices, channels, datapoints and parameters.
+	 */
+	public FahListenerRegistry getListenerRegistry() {
+		return listenerRegistry;
+	}
+
+	/**
+	 * @return Limiter of outbound calls exposing queue depth and wait time per {@link FahRpcLane}; <code>null</code> if rate
+	 * limiting is disabled.
+	 */
+	public FahRateLimitedCommunication getRpcRateLimiter() {
+		return rpcRateLimiter;
+	}
+
+	/**
+	 * @return Number of successful reconnects after the connection to the SysAP was lost.
+	 */
+	public long getReconnectCount() {
+		return reconnectCount.sum();
+	}
+
 	public FahScene getScene(String name) {
 		return getChannel(name, FahScene.class);
 	}
 
+	/**
+	 * @return Phase timing of the last connect; <code>null</code> before the first connect.
+	 */
+	public FahStartupReport getStartupReport() {
+		return startupReport;
+	}
+
 	public FahSwitch getSwitch(String name) {
 		return getChannel(name, FahSwitch.class);
 	}
 
+	/**
+	 * @return Coalescing stage of update processing; exposes received and superseded value counts.
+	 */
+	public FahUpdateCoalescer getUpdateCoalescer() {
+		return updateCoalescer;
+	}
+
+	/**
+	 * @return Queue between the XMPP reader thread and update processing; exposes depth, drop and overflow counts.
+	 */
+	public FahUpdatePipeline<Element> getUpdatePipeline() {
+		return updatePipeline;
+	}
+
 	public void registerChannelFactoryForFidName(String fidName, FahChannelFactory channelFactory) {
 		channelFactoriesByFidName.put(fidName, channelFactory);
 	}
@@ -238,15 +534,321 @@ public void registerDeviceProcessor(FahDeviceProcessor deviceProcessor) {
 		deviceProcessors.add(deviceProcessor);
 	}
 
+	/**
+	 * Fetch the project from the SysAP and reconcile it with the current one; references to channels, devices, rooms and floors
+	 * that still exist stay valid.
+	 */
 	void loadAll() {
-		Value result = communication.rpcCall("RemoteInterface.getAll", Value.of("de"), Value.of(4), Value.of(0), Value.of(0));
-		String projectXml = result.getAsString();
-		if (projectXml != null) {
-			FahProject project = new FahProject(communication);
-			FahXmlProcessor.processProjectXml(projectXml, project, channelFactory,
-											  device -> deviceProcessors.forEach(deviceProcessor -> deviceProcessor.processDevice(device))
-			);
-			this.project = project;
+		loadAll(new FahStartupReport());
+	}
+
+	/**
+	 * <code>getAll</code> returns the whole project as a single string, which is then parsed without building a DOM.
+	 * <p>
+	 * Updates applied while <code>getAll</code> is running are also captured and replayed onto the loaded project before it is
+	 * reconciled, as the loaded project may predate them. Values written locally meanwhile, e.g. acknowledged or optimistic
+	 * commands, are newer than the load start and keep their live value.
+	 */
+	private void loadAll(FahStartupReport report) {
+		synchronized (loadLock) {
+			long loadSequence;
+			synchronized (updateLock) {
+				loadUpdates = new FahUpdateCoalescer();
+				loadSequence = project.getSequence();
+			}
+			try {
+				Value result = report.call("getAll", () -> communication
+						.rpcCall("RemoteInterface.getAll", Value.of("de"), Value.of(4), Value.of(0), Value.of(0)));
+				String projectXml = result.getAsString();
+				if (projectXml != null) {
+					FahProject loadedProject = new FahProject(communication);
+					report.run("parse",
+							   () -> FahXmlProcessor.processProjectXml(projectXml, loadedProject, channelFactory, this::processDevice)
+					);
+					if (!Objects.equals(project.getMrhaVersion(), loadedProject.getMrhaVersion()) || !Objects
+							.equals(project.getMrhaBuild(), loadedProject.getMrhaBuild())) {
+						log.info("Project version: " + loadedProject.getMrhaVersion() + "/" + loadedProject.getMrhaBuild());
+					}
+					report.run("writeCache", () -> writeCachedProject(loadedProject));
+					report.run("reconcile", () -> {
+						synchronized (updateLock) {
+							int replayCount = loadUpdates.getPendingCount();
+							if (replayCount > 0) {
+								log.info("Replaying " + replayCount + " updates received while loading");
+							}
+							loadUpdates.flush(new FahProjectUpdateHandler(loadedProject));
+							project.reconcile(loadedProject, loadSequence);
+						}
+					});
+				}
+			} finally {
+				synchronized (updateLock) {
+					loadUpdates = null;
+				}
+			}
+		}
+	}
+
+	private void close() {
+		closeQuietly(xmppClient);
+		FahBufferingCommunication currentCommandBuffer = commandBuffer;
+		if (currentCommandBuffer != null) {
+			currentCommandBuffer.close();
+		}
+		shutdownOwnedExecutors();
+	}
+
+	private <E extends ExecutorService> E own(E executor) {
+		synchronized (ownedExecutors) {
+			ownedExecutors.add(executor);
+		}
+		return executor;
+	}
+
+	/**
+	 * Updates were dropped, so the project may have missed changes: reload it. Requests arriving while a reload runs cause one
+	 * more reload afterwards, as the running one may already have fetched the project.
+	 */
+	private void requestOverflowResync() {
+		overflowResyncRequested.set(true);
+		if (overflowResyncRunning.compareAndSet(false, true)) {
+			Thread thread = new Thread(this::runOverflowResync, "fah-resync");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void runOverflowResync() {
+		try {
+			while (overflowResyncRequested.getAndSet(false)) {
+				try {
+					loadAll();
+				} catch (RuntimeException e) {
+					log.warn("Could not resynchronize after dropped updates", e);
+				}
+			}
+		} finally {
+			overflowResyncRunning.set(false);
+		}
+		// a request may have arrived after the last check but before the flag was reset
+		if (overflowResyncRequested.get()) {
+			requestOverflowResync();
+		}
+	}
+
+	private void shutdownOwnedExecutors() {
+		synchronized (ownedExecutors) {
+			ownedExecutors.forEach(ExecutorService::shutdown);
+			ownedExecutors.clear();
+		}
+	}
+
+	private CompletableFuture<Void> loadAllInBackground() {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		Thread thread = new Thread(() -> {
+			try {
+				loadAll();
+				future.complete(null);
+			} catch (RuntimeException e) {
+				log.warn("Could not load project", e);
+				future.completeExceptionally(e);
+			}
+		}, "fah-load");
+		thread.setDaemon(true);
+		thread.start();
+		return future;
+	}
+
+	private static void closeQuietly(XmppClient client) {
+		if (client == null) {
+			return;
+		}
+		try {
+			client.close();
+		} catch (XmppException | RuntimeException e) {
+			log.warn("Could not close XMPP client", e);
+		}
+	}
+
+	/**
+	 * @param sysApFlags Receives the flags of the SysAP.
+	 * @return Users by name.
+	 */
+	private Map<String, FahUser> fetchSettings(String fahSysApHostname, Map<String, String> sysApFlags) {
+		CloseableHttpClient httpClient = HttpClients.createDefault();
+		Map<String, FahUser> fahUsers = new TreeMap<>();
+		try {
+			try {
+				HttpUtil.httpGet(httpClient, "http://" + fahSysApHostname + "/settings.json", new AsStringContentHandler(
+						contentString -> FahUserJsonProcessor.processSettingsJson(contentString, fahUsers, sysApFlags)));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} finally {
+			HttpClientUtils.closeQuietly(httpClient);
+		}
+		return fahUsers;
+	}
+
+	private void login(XmppClient client, Map<String, FahUser> fahUsers, String fahUsername, String fahPassword) {
+		if (!fahUsers.containsKey(fahUsername)) {
+			throw new IllegalArgumentException("Invalid username: " + fahUsername + " not in " + fahUsers.keySet());
+		}
+
+		user = fahUsers.get(fahUsername);
+		password = fahPassword;
+		login(client);
+	}
+
+	/**
+	 * Login with the user and password of the last connect.
+	 */
+	private void login(XmppClient client) {
+		String xmppUsername = Jid.of(user.getJid()).getLocal();
+		log.info("Login using " + xmppUsername + "...");
+		try {
+			client.login(xmppUsername, password);
+		} catch (XmppException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void handleConnectionEvent(ConnectionEvent connectionEvent) {
+		switch (connectionEvent.getType()) {
+			case DISCONNECTED:
+				disconnectedNanos = System.nanoTime();
+				if (commandBuffer != null) {
+					commandBuffer.suspend();
+				}
+				log.warn("Disconnected from SysAP", connectionEvent.getCause());
+				break;
+			case RECONNECTION_SUCCEEDED:
+				// not on the XMPP thread, as resynchronizing waits for RPC results
+				Thread thread = new Thread(this::resynchronize, "fah-resync");
+				thread.setDaemon(true);
+				thread.start();
+				break;
+			default:
+				log.info("Connection: " + connectionEvent);
+				break;
+		}
+	}
+
+	/**
+	 * Restore the session after a reconnect: reload the project into the existing one and send the commands buffered meanwhile.
+	 */
+	private void resynchronize() {
+		try {
+			XmppClient client = xmppClient;
+			if (client.getStatus() != XmppSession.Status.AUTHENTICATED) {
+				login(client);
+			}
+			sendPresence(client);
+			loadAll();
+			reconnectCount.increment();
+			log.info("Resynchronized after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedNanos) + "ms offline");
+		} catch (RuntimeException e) {
+			log.warn("Could not resynchronize after reconnect", e);
+		} finally {
+			if (commandBuffer != null) {
+				commandBuffer.resume();
+			}
+			if (rpcBatching != null) {
+				rpcBatching.flush();
+			}
+		}
+	}
+
+	private void sendPresence(XmppClient client) {
+		Presence presence = new Presence(rpcJid, Presence.Type.SUBSCRIBE, null, null, null, null, Jid.of(user.getJid()), null, null,
+										 null
+		);
+		client.send(presence);
+		client.send(new Presence());
+	}
+
+	private void processDevice(FahDevice device) {
+		deviceProcessors.forEach(deviceProcessor -> deviceProcessor.processDevice(device));
+	}
+
+	/**
+	 * A snapshot is only valid for the SysAP and firmware version it was taken from: the serial number and version are part of
+	 * the name. The host is used if the SysAP does not report its serial number.
+	 */
+	private static String projectCacheFileName(String fahSysApHostname, Map<String, String> sysApFlags) {
+		String identity = sysApFlags.getOrDefault("serialNumber", fahSysApHostname);
+		String version = sysApFlags.get("version");
+		String name = version != null ? identity + "-" + version : identity;
+		return "project-" + name.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin";
+	}
+
+	private boolean readCachedProject() {
+		if (projectCacheFile == null || !Files.isRegularFile(projectCacheFile)) {
+			return false;
+		}
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(projectCacheFile)))) {
+			FahProject cachedProject = new FahProject(communication);
+			FahBinaryProcessor.readProject(in, cachedProject, channelFactory, this::processDevice);
+			log.info("Using cached project " + cachedProject.getMrhaVersion() + "/" + cachedProject.getMrhaBuild() + " from "
+							 + projectCacheFile);
+			synchronized (updateLock) {
+				project.reconcile(cachedProject);
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.warn("Could not read cached project from " + projectCacheFile, e);
+			return false;
+		}
+	}
+
+	private void writeCachedProject(FahProject project) {
+		if (projectCacheFile == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(projectCacheFile.getParent());
+			Path tempFile = Files.createTempFile(projectCacheFile.getParent(), "project-", ".tmp");
+			try {
+				try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+					FahBinaryProcessor.writeProject(project, out);
+				}
+				Files.move(tempFile, projectCacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException | RuntimeException e) {
+			log.warn("Could not write cached project to " + projectCacheFile, e);
+		}
+	}
+
+	private void applyCoalescedUpdates() {
+		synchronized (updateLock) {
+			FahUpdateHandler projectUpdateHandler = new FahProjectUpdateHandler(project);
+			FahUpdateCoalescer currentLoadUpdates = loadUpdates;
+			if (currentLoadUpdates == null) {
+				updateCoalescer.flush(projectUpdateHandler);
+				return;
+			}
+			updateCoalescer.flush(new FahUpdateHandler() {
+				@Override
+				public void dataPoint(String serialNumber, String channelId, String dataPointId, String value,
+						long receivedMillis) {
+					projectUpdateHandler.dataPoint(serialNumber, channelId, dataPointId, value, receivedMillis);
+					currentLoadUpdates.dataPoint(serialNumber, channelId, dataPointId, value, receivedMillis);
+				}
+
+				@Override
+				public void parameter(String serialNumber, String parameterId, String value, long receivedMillis) {
+					projectUpdateHandler.parameter(serialNumber, parameterId, value, receivedMillis);
+					currentLoadUpdates.parameter(serialNumber, parameterId, value, receivedMillis);
+				}
+
+				@Override
+				public void sysapValue(String name, String value) {
+					projectUpdateHandler.sysapValue(name, value);
+					currentLoadUpdates.sysapValue(name, value);
+				}
+			});
 		}
 	}
 
@@ -277,9 +879,7 @@ private void handleInboundMessage(MessageEvent messageEvent) {
 						if (payload instanceof Element) {
 							Element updateElement = (Element) payload;
 							if ("update".equals(updateElement.getTagName())) {
-								String updateXml = updateElement.getElementsByTagName("data").item(0).getTextContent();
-								log.debug("updateXml: " + updateXml);
-								FahXmlProcessor.processUpdateXml(updateXml, project);
+								updatePipeline.submit(updateElement);
 								messageEvent.consume();
 							}
 						}
@@ -302,6 +902,23 @@ private void handlePresenceEvent(PresenceEvent presenceEvent) {
 		}
 	}
 
+	private void processUpdateElement(Element updateElement, long receivedMillis) {
+		String updateXml = updateElement.getElementsByTagName("data").item(0).getTextContent();
+		log.debug("updateXml: " + updateXml);
+		FahXmlProcessor.processUpdateXml(updateXml, updateCoalescer, receivedMillis);
+	}
+
+	/**
+	 * Load the classes and initialize the parsers used to process the project and updates, so the first load does not pay for it.
+	 */
+	private void warmUp() {
+		FahProject warmUpProject = new FahProject(communication);
+		// the fake device must neither reach registered channel factories nor device processors, as they may have side effects
+		FahXmlProcessor.processProjectXml(WARM_UP_PROJECT_XML, warmUpProject, FahSwitch::new, device -> {
+		});
+		FahXmlProcessor.processUpdateXml(WARM_UP_UPDATE_XML, new FahUpdateCoalescer());
+	}
+
 	private void initCryptContext(FahUser user, String fahPassword) {
 		cryptContext = new FahCryptContext(communication);
 		cryptContext.init(user, fahPassword.toCharArray());
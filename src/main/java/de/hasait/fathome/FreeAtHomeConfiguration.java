@@ -16,11 +16,30 @@
 
 package de.hasait.fathome;
 
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
 public class FreeAtHomeConfiguration {
 
 	private String username;
 	private String password;
 	private String hostOrIp;
+	private int updateQueueCapacity = 1024;
+	private Executor updateExecutor;
+	private Path projectCacheDirectory;
+	private long rpcBatchWindowMillis;
+	private int rpcBatchMaxSize = 50;
+	private double rpcRateLimitPerSecond;
+	private int rpcRateLimitBurst = 10;
+	private boolean reconnectEnabled = true;
+	private int commandBufferCapacity = 100;
+
+	/**
+	 * @return Maximum number of commands buffered while reconnecting.
+	 */
+	public int getCommandBufferCapacity() {
+		return commandBufferCapacity;
+	}
 
 	public String getHostOrIp() {
 		return hostOrIp;
@@ -30,10 +49,71 @@ public String getPassword() {
 		return password;
 	}
 
+	/**
+	 * @return Directory for binary project snapshots; <code>null</code> (default) disables the cache.
+	 */
+	public Path getProjectCacheDirectory() {
+		return projectCacheDirectory;
+	}
+
+	/**
+	 * @return Maximum number of calls per <code>system.multicall</code>.
+	 */
+	public int getRpcBatchMaxSize() {
+		return rpcBatchMaxSize;
+	}
+
+	/**
+	 * @return Window in which datapoint writes are gathered into a single <code>system.multicall</code>; <code>0</code>
+	 * (default) disables batching.
+	 */
+	public long getRpcBatchWindowMillis() {
+		return rpcBatchWindowMillis;
+	}
+
+	/**
+	 * @return Number of calls that may be sent at once after a quiet period.
+	 */
+	public int getRpcRateLimitBurst() {
+		return rpcRateLimitBurst;
+	}
+
+	/**
+	 * @return Sustained rate of outbound calls; <code>0</code> (default) disables rate limiting.
+	 */
+	public double getRpcRateLimitPerSecond() {
+		return rpcRateLimitPerSecond;
+	}
+
+	/**
+	 * @return Executor processing inbound updates; <code>null</code> (default) for a dedicated daemon thread.
+	 */
+	public Executor getUpdateExecutor() {
+		return updateExecutor;
+	}
+
+	/**
+	 * @return Maximum number of pending inbound updates; if exceeded the oldest pending update is dropped.
+	 */
+	public int getUpdateQueueCapacity() {
+		return updateQueueCapacity;
+	}
+
 	public String getUsername() {
 		return username;
 	}
 
+	/**
+	 * @return <code>true</code> (default) to reconnect automatically after the connection to the SysAP was lost.
+	 */
+	public boolean isReconnectEnabled() {
+		return reconnectEnabled;
+	}
+
+	public void setCommandBufferCapacity(int commandBufferCapacity) {
+		this.commandBufferCapacity = commandBufferCapacity;
+	}
+
 	public void setHostOrIp(String hostOrIp) {
 		this.hostOrIp = hostOrIp;
 	}
@@ -42,6 +122,38 @@ public void setPassword(String password) {
 		this.password = password;
 	}
 
+	public void setProjectCacheDirectory(Path projectCacheDirectory) {
+		this.projectCacheDirectory = projectCacheDirectory;
+	}
+
+	public void setReconnectEnabled(boolean reconnectEnabled) {
+		this.reconnectEnabled = reconnectEnabled;
+	}
+
+	public void setRpcBatchMaxSize(int rpcBatchMaxSize) {
+		this.rpcBatchMaxSize = rpcBatchMaxSize;
+	}
+
+	public void setRpcBatchWindowMillis(long rpcBatchWindowMillis) {
+		this.rpcBatchWindowMillis = rpcBatchWindowMillis;
+	}
+
+	public void setRpcRateLimitBurst(int rpcRateLimitBurst) {
+		this.rpcRateLimitBurst = rpcRateLimitBurst;
+	}
+
+	public void setRpcRateLimitPerSecond(double rpcRateLimitPerSecond) {
+		this.rpcRateLimitPerSecond = rpcRateLimitPerSecond;
+	}
+
+	public void setUpdateExecutor(Executor updateExecutor) {
+		this.updateExecutor = updateExecutor;
+	}
+
+	public void setUpdateQueueCapacity(int updateQueueCapacity) {
+		this.updateQueueCapacity = updateQueueCapacity;
+	}
+
 	public void setUsername(String username) {
 		this.username = username;
 	}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rocks.xmpp.extensions.rpc.RpcException;
+import rocks.xmpp.extensions.rpc.model.Value;
+
+/**
+ * Decorator gathering calls issued within a short window and sending them as a single <code>system.multicall</code>.
+ * <p>
+ * Only the configured methods are batched, by default <code>RemoteInterface.setDatapoint</code>; all other calls are passed
+ * through. Only if the SysAP answers the multicall with an XML-RPC fault saying the method is unknown, its calls are sent
+ * individually and batching is disabled. Any other failure, e.g. a timeout or a lost connection, fails all calls of the
+ * multicall without resending them, as the SysAP may have applied them already.
+ */
+public class FahBatchingCommunication implements FahCommunication {
+
+	public static final String SET_DATAPOINT_METHOD = "RemoteInterface.setDatapoint";
+
+	private static final Logger log = LoggerFactory.getLogger(FahBatchingCommunication.class);
+
+	private static final String MULTICALL_METHOD = "system.multicall";
+
+	/**
+	 * "requested method not found" of the XML-RPC fault code interoperability specification.
+	 */
+	private static final int METHOD_NOT_FOUND_FAULT_CODE = -32601;
+
+	private final FahCommunication delegate;
+	private final ScheduledExecutorService scheduler;
+	private final long windowMillis;
+	private final int maxBatchSize;
+	private final Set<String> batchedMethodNames;
+
+	private final List<PendingCall> pendingCalls = new ArrayList<>();
+	private ScheduledFuture<?> windowFlush;
+	private volatile boolean multicallSupported = true;
+
+	private final LongAdder multicallCount = new LongAdder();
+	private final LongAdder batchedCallCount = new LongAdder();
+	private final LongAdder fallbackCount = new LongAdder();
+
+	public FahBatchingCommunication(FahCommunication delegate, ScheduledExecutorService scheduler, long windowMillis,
+			int maxBatchSize) {
+		this(delegate, scheduler, windowMillis, maxBatchSize, SET_DATAPOINT_METHOD);
+	}
+
+	public FahBatchingCommunication(FahCommunication delegate, ScheduledExecutorService scheduler, long windowMillis,
+			int maxBatchSize, String... batchedMethodNames) {
+		super();
+
+		if (windowMillis < 0) {
+			throw new IllegalArgumentException("windowMillis < 0: " + windowMillis);
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize < 1: " + maxBatchSize);
+		}
+
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.batchedMethodNames = new HashSet<>(Arrays.asList(batchedMethodNames));
+	}
+
+	/**
+	 * Send all pending calls now.
+	 */
+	public void flush() {
+		List<PendingCall> batch;
+		synchronized (pendingCalls) {
+			if (pendingCalls.isEmpty()) {
+				return;
+			}
+			batch = new ArrayList<>(pendingCalls);
+			pendingCalls.clear();
+			if (windowFlush != null) {
+				windowFlush.cancel(false);
+				windowFlush = null;
+			}
+		}
+
+		if (batch.size() == 1 || !multicallSupported) {
+			sendIndividually(batch);
+			return;
+		}
+
+		List<Value> calls = new ArrayList<>();
+		for (PendingCall pendingCall : batch) {
+			Map<String, Value> call = new HashMap<>();
+			call.put("methodName", Value.of(pendingCall.methodName));
+			call.put("params", Value.of(Arrays.asList(pendingCall.parameters)));
+			calls.add(Value.of(call));
+		}
+		multicallCount.increment();
+		batchedCallCount.add(batch.size());
+		CompletableFuture<Value> multicall;
+		try {
+			multicall = delegate.rpcCallAsync(MULTICALL_METHOD, Value.of(calls));
+		} catch (RuntimeException e) {
+			multicall = new CompletableFuture<>();
+			multicall.completeExceptionally(e);
+		}
+		multicall.whenComplete((result, failure) -> {
+			if (failure == null) {
+				if (!completeBatch(batch, result)) {
+					failBatch(batch, new IllegalStateException("Invalid " + MULTICALL_METHOD + " response: " + result));
+				}
+				return;
+			}
+			if (isUnknownMethodFault(failure)) {
+				if (multicallSupported) {
+					multicallSupported = false;
+					log.warn("SysAP does not support " + MULTICALL_METHOD + ", calls are no longer batched");
+				}
+				fallbackCount.increment();
+				sendIndividually(batch);
+				return;
+			}
+			log.warn("Multicall of " + batch.size() + " calls failed", failure);
+			failBatch(batch, unwrap(failure));
+		});
+	}
+
+	/**
+	 * @return Number of calls sent as part of a multicall.
+	 */
+	public long getBatchedCallCount() {
+		return batchedCallCount.sum();
+	}
+
+	/**
+	 * @return Number of multicalls whose calls had to be sent individually because the SysAP does not support them.
+	 */
+	public long getFallbackCount() {
+		return fallbackCount.sum();
+	}
+
+	public long getMulticallCount() {
+		return multicallCount.sum();
+	}
+
+	/**
+	 * @return <code>false</code> after the SysAP answered a multicall with an unknown method fault.
+	 */
+	public boolean isMulticallSupported() {
+		return multicallSupported;
+	}
+
+	@Override
+	public Value rpcCall(String methodName, Value... parameters) {
+		if (!isBatched(methodName)) {
+			return delegate.rpcCall(methodName, parameters);
+		}
+		try {
+			return rpcCallAsync(methodName, parameters).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+		if (!isBatched(methodName)) {
+			return delegate.rpcCallAsync(methodName, parameters);
+		}
+
+		PendingCall pendingCall = new PendingCall(methodName, parameters);
+		boolean full;
+		synchronized (pendingCalls) {
+			pendingCalls.add(pendingCall);
+			full = pendingCalls.size() >= maxBatchSize;
+			if (!full && windowFlush == null) {
+				windowFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full) {
+			flush();
+		}
+		return pendingCall.future;
+	}
+
+	/**
+	 * @return <code>true</code> if the failure is an XML-RPC fault saying that <code>system.multicall</code> is unknown.
+	 */
+	private static boolean isUnknownMethodFault(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof RpcException) {
+				RpcException rpcException = (RpcException) cause;
+				String faultString = rpcException.getFaultString();
+				return rpcException.getFaultCode() == METHOD_NOT_FOUND_FAULT_CODE
+						|| faultString != null && faultString.contains(MULTICALL_METHOD);
+			}
+		}
+		return false;
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+	}
+
+	/**
+	 * @return <code>false</code> if the result is not a valid multicall response.
+	 */
+	private boolean completeBatch(List<PendingCall> batch, Value result) {
+		List<Value> results = result != null ? result.getAsArray() : null;
+		if (results == null || results.size() != batch.size()) {
+			return false;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			CompletableFuture<Value> future = batch.get(i).future;
+			Value callResult = results.get(i);
+			List<Value> values = callResult.getAsArray();
+			Map<String, Value> fault = values == null ? callResult.getAsMap() : null;
+			if (values != null && !values.isEmpty()) {
+				future.complete(values.get(0));
+			} else if (fault != null && fault.containsKey("faultCode")) {
+				Value faultCode = fault.get("faultCode");
+				Value faultString = fault.get("faultString");
+				RpcException rpcException = new RpcException(faultCode != null ? faultCode.getAsInteger() : 0,
+															 faultString != null ? faultString.getAsString() : null
+				);
+				future.completeExceptionally(new RuntimeException(
+						"Fault " + rpcException.getFaultCode() + ": " + rpcException.getFaultString(), rpcException));
+			} else {
+				future.complete(callResult);
+			}
+		}
+		return true;
+	}
+
+	private void failBatch(Collection<PendingCall> batch, Throwable failure) {
+		for (PendingCall pendingCall : batch) {
+			pendingCall.future.completeExceptionally(failure);
+		}
+	}
+
+	private boolean isBatched(String methodName) {
+		return multicallSupported && batchedMethodNames.contains(methodName);
+	}
+
+	private void sendIndividually(Collection<PendingCall> batch) {
+		for (PendingCall pendingCall : batch) {
+			CompletableFuture<Value> call;
+			try {
+				call = delegate.rpcCallAsync(pendingCall.methodName, pendingCall.parameters);
+			} catch (RuntimeException e) {
+				pendingCall.future.completeExceptionally(e);
+				continue;
+			}
+			call.whenComplete((result, failure) -> {
+				if (failure != null) {
+					pendingCall.future.completeExceptionally(unwrap(failure));
+				} else {
+					pendingCall.future.complete(result);
+				}
+			});
+		}
+	}
+
+	private static final class PendingCall {
+
+		private final String methodName;
+		private final Value[] parameters;
+		private final CompletableFuture<Value> future = new CompletableFuture<>();
+
+		private PendingCall(String methodName, Value[] parameters) {
+			this.methodName = methodName;
+			this.parameters = parameters;
+		}
+
+	}
+
+}
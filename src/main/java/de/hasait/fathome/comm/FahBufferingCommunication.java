@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import rocks.xmpp.extensions.rpc.model.Value;
+
+/**
+ * Decorator holding back commands while the connection to the SysAP is down.
+ * <p>
+ * After {@link #suspend()} calls of the configured methods, by default <code>RemoteInterface.setDatapoint</code>, are buffered in
+ * order instead of being sent; {@link #resume()} sends them back to back, so a {@link FahBatchingCommunication} delegate can
+ * combine them. All other calls are passed through. If the buffer is full, further commands fail immediately.
+ * <p>
+ * Only asynchronous calls are buffered: a synchronous call is passed through, as blocking its caller until the connection is back
+ * could take arbitrarily long.
+ */
+public class FahBufferingCommunication implements FahCommunication {
+
+	private final FahCommunication delegate;
+	private final int capacity;
+	private final Set<String> bufferedMethodNames;
+
+	private final List<BufferedCall> bufferedCalls = new ArrayList<>();
+	private boolean suspended;
+	private boolean closed;
+
+	private final LongAdder bufferedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	public FahBufferingCommunication(FahCommunication delegate, int capacity) {
+		this(delegate, capacity, FahBatchingCommunication.SET_DATAPOINT_METHOD);
+	}
+
+	public FahBufferingCommunication(FahCommunication delegate, int capacity, String... bufferedMethodNames) {
+		super();
+
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity < 0: " + capacity);
+		}
+
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.bufferedMethodNames = new HashSet<>(Arrays.asList(bufferedMethodNames));
+	}
+
+	/**
+	 * Fail the buffered commands and stop buffering for good; used when the connection is closed.
+	 */
+	public void close() {
+		List<BufferedCall> calls;
+		synchronized (this) {
+			closed = true;
+			suspended = false;
+			calls = new ArrayList<>(bufferedCalls);
+			bufferedCalls.clear();
+		}
+		for (BufferedCall call : calls) {
+			call.future.completeExceptionally(new RuntimeException("Connection closed, dropping " + call.methodName));
+		}
+	}
+
+	/**
+	 * @return Number of commands buffered so far.
+	 */
+	public long getBufferedCount() {
+		return bufferedCount.sum();
+	}
+
+	/**
+	 * @return Number of commands currently waiting for {@link #resume()}.
+	 */
+	public synchronized int getPendingCount() {
+		return bufferedCalls.size();
+	}
+
+	/**
+	 * @return Number of commands failed because the buffer was full.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public synchronized boolean isSuspended() {
+		return suspended;
+	}
+
+	/**
+	 * Send the buffered commands in order and stop buffering. Commands issued meanwhile are sent after them.
+	 */
+	public void resume() {
+		while (true) {
+			List<BufferedCall> calls;
+			synchronized (this) {
+				if (bufferedCalls.isEmpty()) {
+					suspended = false;
+					return;
+				}
+				calls = new ArrayList<>(bufferedCalls);
+				bufferedCalls.clear();
+			}
+			for (BufferedCall call : calls) {
+				send(call);
+			}
+		}
+	}
+
+	@Override
+	public Value rpcCall(String methodName, Value... parameters) {
+		return delegate.rpcCall(methodName, parameters);
+	}
+
+	@Override
+	public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+		if (bufferedMethodNames.contains(methodName)) {
+			synchronized (this) {
+				if (suspended) {
+					BufferedCall call = new BufferedCall(methodName, parameters);
+					if (bufferedCalls.size() >= capacity) {
+						rejectedCount.increment();
+						call.future.completeExceptionally(
+								new RuntimeException("Not connected and command buffer full, dropping " + methodName));
+					} else {
+						bufferedCount.increment();
+						bufferedCalls.add(call);
+					}
+					return call.future;
+				}
+			}
+		}
+		return delegate.rpcCallAsync(methodName, parameters);
+	}
+
+	/**
+	 * Start buffering commands; no-op once {@link #close() closed}.
+	 */
+	public synchronized void suspend() {
+		suspended = !closed;
+	}
+
+	private void send(BufferedCall call) {
+		CompletableFuture<Value> result;
+		try {
+			result = delegate.rpcCallAsync(call.methodName, call.parameters);
+		} catch (RuntimeException e) {
+			call.future.completeExceptionally(e);
+			return;
+		}
+		result.whenComplete((value, failure) -> {
+			if (failure != null) {
+				call.future.completeExceptionally(
+						failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+			} else {
+				call.future.complete(value);
+			}
+		});
+	}
+
+	private static final class BufferedCall {
+
+		private final String methodName;
+		private final Value[] parameters;
+		private final CompletableFuture<Value> future = new CompletableFuture<>();
+
+		private BufferedCall(String methodName, Value[] parameters) {
+			this.methodName = methodName;
+			this.parameters = parameters;
+		}
+
+	}
+
+}
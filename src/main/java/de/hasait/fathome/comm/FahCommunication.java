@@ -16,6 +16,8 @@
 
 package de.hasait.fathome.comm;
 
+import java.util.concurrent.CompletableFuture;
+
 import rocks.xmpp.extensions.rpc.model.Value;
 
 /**
@@ -25,4 +27,18 @@ public interface FahCommunication {
 
 	Value rpcCall(String methodName, Value... parameters);
 
+	/**
+	 * Call without blocking the calling thread. The default implementation delegates to {@link #rpcCall(String, Value...)}
+	 * synchronously; implementations backed by an asynchronous transport should override it.
+	 */
+	default CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+		CompletableFuture<Value> future = new CompletableFuture<>();
+		try {
+			future.complete(rpcCall(methodName, parameters));
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
 }
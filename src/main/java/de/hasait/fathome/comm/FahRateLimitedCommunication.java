@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import rocks.xmpp.extensions.rpc.model.Value;
+
+/**
+ * Decorator limiting the rate of outbound calls with a token bucket.
+ * <p>
+ * Calls exceeding the rate are queued per {@link FahRpcLane}; queued {@link FahRpcLane#INTERACTIVE} calls are always sent before
+ * queued {@link FahRpcLane#BULK} calls. Time spent in the queue is recorded per lane.
+ * <p>
+ * Only one thread sends at a time, so calls of a lane reach the delegate in the order they were issued.
+ */
+public class FahRateLimitedCommunication implements FahCommunication {
+
+	private final FahCommunication delegate;
+	private final ScheduledExecutorService scheduler;
+	private final double permitsPerNano;
+	private final int burst;
+
+	private final Lane[] lanes = new Lane[FahRpcLane.values().length];
+	private double tokens;
+	private long lastRefillNanos;
+	private boolean dispatchScheduled;
+	private boolean dispatching;
+
+	/**
+	 * @param permitsPerSecond Sustained rate of calls.
+	 * @param burst            Number of calls that may be sent at once after a quiet period.
+	 */
+	public FahRateLimitedCommunication(FahCommunication delegate, ScheduledExecutorService scheduler, double permitsPerSecond,
+			int burst) {
+		super();
+
+		if (!(permitsPerSecond > 0)) {
+			throw new IllegalArgumentException("permitsPerSecond <= 0: " + permitsPerSecond);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst < 1: " + burst);
+		}
+
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = burst;
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane();
+		}
+		this.tokens = burst;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	public long getCallCount(FahRpcLane lane) {
+		return lanes[lane.ordinal()].callCount.sum();
+	}
+
+	/**
+	 * @return Longest time a call of the lane waited for a token.
+	 */
+	public long getMaxQueueWaitMillis(FahRpcLane lane) {
+		return TimeUnit.NANOSECONDS.toMillis(lanes[lane.ordinal()].maxWaitNanos.get());
+	}
+
+	/**
+	 * @return Average time calls of the lane waited for a token.
+	 */
+	public double getMeanQueueWaitMillis(FahRpcLane lane) {
+		Lane laneState = lanes[lane.ordinal()];
+		long callCount = laneState.callCount.sum();
+		return callCount > 0 ? laneState.waitNanos.sum() / (double) callCount / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+	}
+
+	/**
+	 * @return Number of calls of the lane currently waiting for a token.
+	 */
+	public int getQueueDepth(FahRpcLane lane) {
+		synchronized (this) {
+			return lanes[lane.ordinal()].queue.size();
+		}
+	}
+
+	@Override
+	public Value rpcCall(String methodName, Value... parameters) {
+		try {
+			return rpcCallAsync(methodName, parameters).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+		QueuedCall queuedCall = new QueuedCall(FahRpcLane.current(), methodName, parameters);
+		synchronized (this) {
+			lanes[queuedCall.lane.ordinal()].queue.add(queuedCall);
+		}
+		dispatch();
+		return queuedCall.future;
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+	}
+
+	private void dispatch() {
+		synchronized (this) {
+			if (dispatching) {
+				// the dispatching thread polls the queues again before it stops
+				return;
+			}
+			dispatching = true;
+		}
+		boolean stopped = false;
+		try {
+			while (true) {
+				QueuedCall call;
+				long nowNanos = System.nanoTime();
+				synchronized (this) {
+					call = poll(nowNanos);
+					if (call == null) {
+						scheduleDispatch();
+						dispatching = false;
+						stopped = true;
+						return;
+					}
+				}
+				send(call, nowNanos);
+			}
+		} finally {
+			if (!stopped) {
+				synchronized (this) {
+					dispatching = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Next call to send or <code>null</code> if no call is queued or there is no token.
+	 */
+	private QueuedCall poll(long nowNanos) {
+		tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * permitsPerNano);
+		lastRefillNanos = nowNanos;
+		if (tokens < 1.0) {
+			return null;
+		}
+		for (Lane lane : lanes) {
+			QueuedCall call = lane.queue.poll();
+			if (call != null) {
+				tokens -= 1.0;
+				return call;
+			}
+		}
+		return null;
+	}
+
+	private void scheduleDispatch() {
+		if (!dispatchScheduled && hasQueuedCalls()) {
+			dispatchScheduled = true;
+			long delayNanos = Math.max(1L, (long) Math.ceil((1.0 - tokens) / permitsPerNano));
+			scheduler.schedule(() -> {
+				synchronized (this) {
+					dispatchScheduled = false;
+				}
+				dispatch();
+			}, delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private boolean hasQueuedCalls() {
+		for (Lane lane : lanes) {
+			if (!lane.queue.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void send(QueuedCall call, long nowNanos) {
+		Lane lane = lanes[call.lane.ordinal()];
+		long waitNanos = nowNanos - call.queuedNanos;
+		lane.callCount.increment();
+		lane.waitNanos.add(waitNanos);
+		lane.maxWaitNanos.accumulate(waitNanos);
+
+		CompletableFuture<Value> result;
+		try {
+			result = delegate.rpcCallAsync(call.methodName, call.parameters);
+		} catch (RuntimeException e) {
+			call.future.completeExceptionally(e);
+			return;
+		}
+		result.whenComplete((value, failure) -> {
+			if (failure != null) {
+				call.future.completeExceptionally(unwrap(failure));
+			} else {
+				call.future.complete(value);
+			}
+		});
+	}
+
+	private static final class Lane {
+
+		private final Queue<QueuedCall> queue = new ArrayDeque<>();
+		private final LongAdder callCount = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+
+	}
+
+	private static final class QueuedCall {
+
+		private final FahRpcLane lane;
+		private final String methodName;
+		private final Value[] parameters;
+		private final long queuedNanos = System.nanoTime();
+		private final CompletableFuture<Value> future = new CompletableFuture<>();
+
+		private QueuedCall(FahRpcLane lane, String methodName, Value[] parameters) {
+			this.lane = lane;
+			this.methodName = methodName;
+			this.parameters = parameters;
+		}
+
+	}
+
+}
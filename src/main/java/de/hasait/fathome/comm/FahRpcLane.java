@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority of outbound calls, see {@link FahRateLimitedCommunication}.
+ * <p>
+ * The lane is taken from the thread issuing the call; calls are {@link #INTERACTIVE} unless issued within {@link #run(Supplier)}
+ * of another lane. Code issuing calls from a continuation, which runs on whatever thread completed the previous call, captures
+ * the lane with {@link #current()} beforehand and issues them within {@link #run(Supplier)}.
+ */
+public enum FahRpcLane {
+
+	/**
+	 * Commands a user waits for, e.g. a button press; always sent before {@link #BULK} calls.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Commands of automations and group commands.
+	 */
+	BULK;
+
+	private static final ThreadLocal<FahRpcLane> currentLane = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+	public static FahRpcLane current() {
+		return currentLane.get();
+	}
+
+	/**
+	 * Issue the calls of the supplier in this lane.
+	 */
+	public <T> T run(Supplier<T> supplier) {
+		FahRpcLane previousLane = currentLane.get();
+		currentLane.set(this);
+		try {
+			return supplier.get();
+		} finally {
+			currentLane.set(previousLane);
+		}
+	}
+
+}
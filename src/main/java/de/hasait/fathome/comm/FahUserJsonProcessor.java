@@ -28,7 +28,24 @@
 public final class FahUserJsonProcessor {
 
 	public static void processSettingsJson(String contentString, Map<String, FahUser> fahUsers) {
+		processSettingsJson(contentString, fahUsers, null);
+	}
+
+	/**
+	 * @param fahFlags Receives the scalar values of <code>flags</code>, e.g. <code>serialNumber</code> and <code>version</code>
+	 *                 of the SysAP; ignored if <code>null</code>.
+	 */
+	public static void processSettingsJson(String contentString, Map<String, FahUser> fahUsers, Map<String, String> fahFlags) {
 		JSONObject root = new JSONObject(contentString);
+		JSONObject flags = root.optJSONObject("flags");
+		if (fahFlags != null && flags != null) {
+			for (String key : flags.keySet()) {
+				Object value = flags.get(key);
+				if (!(value instanceof JSONObject) && !(value instanceof JSONArray) && value != JSONObject.NULL) {
+					fahFlags.put(key, value.toString());
+				}
+			}
+		}
 		JSONArray users = root.getJSONArray("users");
 		for (int userIndex = 0; userIndex < users.length(); userIndex++) {
 			JSONObject user = users.getJSONObject(userIndex);
@@ -17,10 +17,15 @@
 package de.hasait.fathome.project;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,11 +38,22 @@ public abstract class AbstractFahChannel extends AbstractFahPart {
 
 	private static final Logger log = LoggerFactory.getLogger(AbstractFahChannel.class);
 
-	private final FahDevice device;
 	private final String id;
-	private final FahFunction function;
-	private final Map<String, String> dataPointValues = new ConcurrentHashMap<>();
-	private String name;
+	private volatile FahDevice device;
+	private volatile FahFunction function;
+	private final FahDataPointView dataPoints = new FahDataPointView(this);
+	private volatile String name;
+	private volatile FahChannelIndex.Keys indexKeys;
+	private volatile FahAggregateValues aggregatedContribution = FahAggregateValues.NONE;
+	private volatile Map<String, FahDataPointDebouncer> debouncers;
+	/**
+	 * Debouncers of datapoints without their own, while all datapoints are debounced; <code>null</code> otherwise.
+	 */
+	private volatile Map<String, FahDataPointDebouncer> channelDebouncers;
+	private volatile boolean optimistic;
+	private volatile Map<String, ConfirmingDataPoint> confirmingDataPoints = Collections.emptyMap();
+	private final Map<String, FahCommandConfirmation> pendingConfirmations = new ConcurrentHashMap<>();
+	private final FahDataPointWaiters waiters = new FahDataPointWaiters();
 
 	protected AbstractFahChannel(FahDevice device, String id, FahFunction function) {
 		super();
@@ -49,6 +65,46 @@ protected AbstractFahChannel(FahDevice device, String id, FahFunction function)
 		device.addChannel(this);
 	}
 
+	/**
+	 * Listen to all datapoints of this channel.
+	 */
+	public final FahListenerRegistration addDataPointListener(FahDataPointListener listener) {
+		return listenerRegistry().addDataPointListener(device.getSerialNumber(), id, listener);
+	}
+
+	/**
+	 * Listen to a single datapoint of this channel.
+	 */
+	public final FahListenerRegistration addDataPointListener(String dataPointId, FahDataPointListener listener) {
+		return listenerRegistry().addDataPointListener(device.getSerialNumber(), id, dataPointId, listener);
+	}
+
+	/**
+	 * Wait for the datapoint to satisfy the predicate; tested against the current value and on each change reported, without
+	 * polling.
+	 *
+	 * @param predicate Receives <code>null</code> if the datapoint has no value.
+	 * @return Completes with the satisfying value, or with a {@link java.util.concurrent.TimeoutException} after the timeout.
+	 */
+	public final CompletableFuture<String> awaitDataPoint(String dataPointId, Predicate<String> predicate, long timeoutMillis) {
+		return waiters.await(this, dataPointId, predicate, timeoutMillis);
+	}
+
+	/**
+	 * @return Command writing the datapoint with the path encoded once; keep it for repeated writes.
+	 */
+	public final FahDataPointCommand createDataPointCommand(String dataPointId) {
+		return new FahDataPointCommand(this, dataPointId);
+	}
+
+	/**
+	 * @return Handle of the datapoint in the {@link FahProject#getDataPointTable() datapoint table} or <code>-1</code> if the
+	 * datapoint has no value.
+	 */
+	public final int getDataPointHandle(String dataPointId) {
+		return dataPoints.getHandle(dataPointId);
+	}
+
 	public final FahDevice getDevice() {
 		return device;
 	}
@@ -61,19 +117,145 @@ public final String getName() {
 		return name;
 	}
 
+	/**
+	 * @return <code>true</code> if writes are applied locally before the SysAP confirms them, see {@link FahConfirmationTracker}.
+	 */
+	public final boolean isOptimistic() {
+		return optimistic;
+	}
+
+	/**
+	 * Writes to datapoints without a confirming datapoint are not confirmed: even if {@link #isOptimistic() optimistic}, they are
+	 * applied when the SysAP accepts the command.
+	 *
+	 * @param confirmingDataPointId Datapoint the SysAP reports the written value on, e.g. the output datapoint of an actuator.
+	 */
+	public final void setConfirmingDataPoint(String dataPointId, String confirmingDataPointId) {
+		setConfirmingDataPoint(dataPointId, confirmingDataPointId, UnaryOperator.identity());
+	}
+
+	/**
+	 * @param confirmingValue Maps a written value to the value the SysAP reports on the confirming datapoint, e.g. a move command
+	 *                        of a blind to its move state; <code>null</code> if the SysAP will not report anything, e.g. as the
+	 *                        blind is at that end already.
+	 */
+	public final void setConfirmingDataPoint(String dataPointId, String confirmingDataPointId,
+			UnaryOperator<String> confirmingValue) {
+		setConfirmingDataPoint(dataPointId, confirmingDataPointId, confirmingValue, false);
+	}
+
+	/**
+	 * @param intermediateValues <code>true</code> if the SysAP reports intermediate values until the written one is reached, e.g.
+	 *                           while a dimmer ramps; other values then do not reject the command, only the timeout does.
+	 */
+	public final void setConfirmingDataPoint(String dataPointId, String confirmingDataPointId,
+			UnaryOperator<String> confirmingValue, boolean intermediateValues) {
+		synchronized (pendingConfirmations) {
+			Map<String, ConfirmingDataPoint> newConfirmingDataPoints = new HashMap<>(confirmingDataPoints);
+			newConfirmingDataPoints.put(dataPointId,
+										new ConfirmingDataPoint(confirmingDataPointId, confirmingValue, intermediateValues)
+			);
+			confirmingDataPoints = newConfirmingDataPoints;
+		}
+	}
+
+	/**
+	 * Apply writes locally as soon as they are sent, so UIs can react instantly; the returned futures complete when the SysAP
+	 * confirms the value and fail if it was rolled back.
+	 */
+	public final void setOptimistic(boolean optimistic) {
+		this.optimistic = optimistic;
+	}
+
+	/**
+	 * @return <code>true</code> if writes to the datapoint are debounced, see {@link #setDebouncing(String, boolean)}.
+	 */
+	public final boolean isDebouncing(String dataPointId) {
+		Map<String, FahDataPointDebouncer> currentDebouncers = debouncers;
+		return channelDebouncers != null || currentDebouncers != null && currentDebouncers.containsKey(dataPointId);
+	}
+
+	/**
+	 * Debounce writes to all datapoints of this channel, see {@link #setDebouncing(String, boolean)}. Switching it off keeps the
+	 * datapoints debounced individually.
+	 */
+	public final void setDebouncing(boolean debouncing) {
+		synchronized (this) {
+			if (!debouncing) {
+				channelDebouncers = null;
+			} else if (channelDebouncers == null) {
+				channelDebouncers = new ConcurrentHashMap<>();
+			}
+		}
+	}
+
+	/**
+	 * Debounce writes to a datapoint (latest wins): while a write is in flight, further writes only replace the value sent next,
+	 * so a fast sequence of commands, e.g. from a slider, does not queue up. The future of a replaced write completes when the
+	 * newer value was applied.
+	 */
+	public final void setDebouncing(String dataPointId, boolean debouncing) {
+		if (debouncing) {
+			debouncers().computeIfAbsent(dataPointId, k -> new FahDataPointDebouncer(this, k));
+		} else if (debouncers != null) {
+			debouncers.remove(dataPointId);
+		}
+	}
+
 	final void setDataPoint(String dataPointId, String value) {
-		String oldValue = value != null ? dataPointValues.put(dataPointId, value) : dataPointValues.remove(dataPointId);
-		if (!Objects.equals(oldValue, value)) {
-			log.info(name + "@" + dataPointId + " changed: " + oldValue + " -> " + value);
+		updateDataPoint(dataPointId, false, null, value, System.currentTimeMillis());
+	}
+
+	/**
+	 * Set the value only if the datapoint still has the expected value.
+	 *
+	 * @return <code>false</code> if the datapoint had another value.
+	 */
+	final boolean replaceDataPoint(String dataPointId, String expectedValue, String value) {
+		return updateDataPoint(dataPointId, true, expectedValue, value, System.currentTimeMillis());
+	}
+
+	/**
+	 * Parse an integer datapoint value.
+	 *
+	 * @return <code>defaultValue</code> if <code>value</code> is <code>null</code> or not an integer.
+	 */
+	protected static int parseIntValue(String value, int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Not an integer: " + value);
+			return defaultValue;
 		}
 	}
 
+	/**
+	 * Called once per change of a datapoint, before listeners are notified. Subclasses decode the datapoints they expose into
+	 * typed fields here, so their getters do not have to parse on every read.
+	 *
+	 * @param value <code>null</code> if the datapoint was removed.
+	 */
+	protected void decodeDataPoint(String dataPointId, String value) {
+		// nop
+	}
+
+	/**
+	 * Contribution of this channel to the {@link FahAggregates} of its room and floor. Called after each datapoint change, so
+	 * subclasses should derive it from their decoded fields.
+	 */
+	protected FahAggregateValues getAggregateContribution() {
+		return FahAggregateValues.NONE;
+	}
+
 	protected Set<String> getDataPointIds() {
-		return Collections.unmodifiableSet(dataPointValues.keySet());
+		return dataPoints.getIds();
 	}
 
 	protected String getDataPointValue(String dataPointId) {
-		return dataPointValues.get(dataPointId);
+		return dataPoints.getValue(dataPointId);
 	}
 
 	protected FahFunction getFunction() {
@@ -81,16 +263,254 @@ protected FahFunction getFunction() {
 	}
 
 	protected void rpcSetDataPoint(String dataPointId, String value) {
-		Value dpPath = Value.of(device.getSerialNumber() + "/" + id + "/" + dataPointId);
-		Value dpValue = Value.of(value);
+		if (isDebouncing(dataPointId)) {
+			join(rpcSetDataPointAsync(dataPointId, value));
+			return;
+		}
+
+		sendDataPoint(dataPointId, dataPointPath(dataPointId), value, Value.of(value));
+	}
+
+	/**
+	 * Like {@link #rpcSetDataPoint(String, String)}, but without blocking: the returned future completes when the SysAP has
+	 * answered and the local value has been updated, or, if {@link #isOptimistic() optimistic}, when the SysAP confirmed the
+	 * value.
+	 */
+	protected CompletableFuture<Void> rpcSetDataPointAsync(String dataPointId, String value) {
+		FahDataPointDebouncer debouncer = debouncer(dataPointId);
+		if (debouncer != null) {
+			return debouncer.submit(value);
+		}
+		return sendDataPointAsync(dataPointId, value);
+	}
+
+	protected void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	void projectChanged() {
+		dataPoints.moveTo(getProject().getDataPointTable());
+	}
+
+	final void detachDataPoints() {
+		dataPoints.detach();
+	}
+
+	/**
+	 * Used when reconciling a reloaded project: the channel is adopted by the device of the live project.
+	 */
+	final void moveToDevice(FahDevice newDevice) {
+		device = newDevice;
+		newDevice.addChannel(this);
+	}
+
+	final void setFunction(FahFunction function) {
+		this.function = function;
+		FahProject project = getProject();
+		if (project != null) {
+			project.reindexChannel(this);
+		}
+	}
+
+	/**
+	 * @return Contribution currently counted in the aggregates.
+	 */
+	final FahAggregateValues getAggregatedContribution() {
+		return aggregatedContribution;
+	}
+
+	final void setAggregatedContribution(FahAggregateValues aggregatedContribution) {
+		this.aggregatedContribution = aggregatedContribution;
+	}
+
+	final FahChannelIndex.Keys getIndexKeys() {
+		return indexKeys;
+	}
+
+	final void setIndexKeys(FahChannelIndex.Keys indexKeys) {
+		this.indexKeys = indexKeys;
+	}
+
+	final Value dataPointPath(String dataPointId) {
+		return Value.of(device.getSerialNumber() + "/" + id + "/" + dataPointId);
+	}
+
+	/**
+	 * @return <code>null</code> if writes to the datapoint are not confirmed.
+	 */
+	final String getConfirmingDataPointId(String dataPointId) {
+		ConfirmingDataPoint confirmingDataPoint = confirmingDataPoints.get(dataPointId);
+		return confirmingDataPoint != null ? confirmingDataPoint.dataPointId : null;
+	}
 
+	/**
+	 * @return <code>null</code> if the SysAP will not report the write.
+	 */
+	final String getConfirmingValue(String dataPointId, String value) {
+		ConfirmingDataPoint confirmingDataPoint = confirmingDataPoints.get(dataPointId);
+		return confirmingDataPoint != null ? confirmingDataPoint.value.apply(value) : null;
+	}
+
+	final boolean hasIntermediateConfirmingValues(String dataPointId) {
+		ConfirmingDataPoint confirmingDataPoint = confirmingDataPoints.get(dataPointId);
+		return confirmingDataPoint != null && confirmingDataPoint.intermediateValues;
+	}
+
+	final Map<String, FahCommandConfirmation> getPendingConfirmations() {
+		return pendingConfirmations;
+	}
+
+	/**
+	 * @return <code>true</code> if the datapoint was written or confirms a write whose confirmation is pending.
+	 */
+	final boolean hasPendingConfirmation(String dataPointId) {
+		if (pendingConfirmations.isEmpty()) {
+			return false;
+		}
+		for (FahCommandConfirmation confirmation : pendingConfirmations.values()) {
+			if (confirmation.dataPointId.equals(dataPointId) || confirmation.confirmingDataPointId.equals(dataPointId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	final void sendDataPoint(String dataPointId, Value dpPath, String value, Value dpValue) {
+		if (optimistic) {
+			join(sendDataPointAsync(dataPointId, dpPath, value, dpValue));
+			return;
+		}
 		Value result = getProject().getCommunication().rpcCall("RemoteInterface.setDatapoint", dpPath, dpValue);
 		log.info("result: " + result);
 		setDataPoint(dataPointId, value);
 	}
 
-	protected void setName(String name) {
-		this.name = name;
+	final CompletableFuture<Void> sendDataPointAsync(String dataPointId, String value) {
+		return sendDataPointAsync(dataPointId, dataPointPath(dataPointId), value, Value.of(value));
+	}
+
+	final CompletableFuture<Void> sendDataPointAsync(String dataPointId, Value dpPath, String value, Value dpValue) {
+		FahProject project = getProject();
+		FahConfirmationTracker confirmationTracker = project.getConfirmationTracker();
+		FahCommandConfirmation confirmation = optimistic ? confirmationTracker.expect(this, dataPointId, value) : null;
+		if (confirmation != null) {
+			project.getCommunication().rpcCallAsync("RemoteInterface.setDatapoint", dpPath, dpValue).whenComplete((result, failure) -> {
+				log.info("result: " + result);
+				if (failure != null) {
+					confirmationTracker.failed(confirmation, failure);
+				} else {
+					confirmation.acknowledged = true;
+				}
+			});
+			return confirmation.getFuture();
+		}
+
+		return project.getCommunication().rpcCallAsync("RemoteInterface.setDatapoint", dpPath, dpValue).thenAccept(result -> {
+			log.info("result: " + result);
+			setDataPoint(dataPointId, value);
+		});
+	}
+
+	/**
+	 * Apply a value reported by the SysAP.
+	 *
+	 * @param receivedMillis When the report was received, see {@link FahDataPointTable#getTimestamp(int)}.
+	 */
+	final void setReportedDataPoint(String dataPointId, String value, long receivedMillis) {
+		FahConfirmationTracker confirmationTracker = pendingConfirmations.isEmpty() ? null : getProject().getConfirmationTracker();
+		if (confirmationTracker != null && confirmationTracker.isStale(this, dataPointId, value)) {
+			log.debug(name + "@" + dataPointId + " ignored stale report: " + value);
+			return;
+		}
+		updateDataPoint(dataPointId, false, null, value, receivedMillis);
+		if (confirmationTracker != null) {
+			confirmationTracker.reported(this, dataPointId, value);
+		}
+	}
+
+	private static void join(CompletableFuture<Void> future) {
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		}
+	}
+
+	private FahListenerRegistry listenerRegistry() {
+		return requireProject("Channel " + device.getSerialNumber() + "/" + id).getListenerRegistry();
+	}
+
+	private boolean updateDataPoint(String dataPointId, boolean conditional, String expectedValue, String value,
+			long timestampMillis) {
+		String oldValue;
+		FahProject project;
+		// raw value, typed fields and aggregate contribution change together
+		synchronized (this) {
+			if (conditional && !Objects.equals(dataPoints.getValue(dataPointId), expectedValue)) {
+				return false;
+			}
+			oldValue = dataPoints.setValue(dataPointId, value, timestampMillis);
+			if (Objects.equals(oldValue, value)) {
+				return true;
+			}
+			decodeDataPoint(dataPointId, value);
+			project = getProject();
+			if (project != null) {
+				project.updateAggregates(this);
+			}
+		}
+		log.info(name + "@" + dataPointId + " changed: " + oldValue + " -> " + value);
+		if (project != null) {
+			project.fireAggregatesChanged();
+			project.getListenerRegistry().fireDataPointChanged(this, dataPointId, oldValue, value);
+		}
+		waiters.changed(dataPointId, value);
+		return true;
+	}
+
+	/**
+	 * @return <code>null</code> if writes to the datapoint are not debounced.
+	 */
+	private FahDataPointDebouncer debouncer(String dataPointId) {
+		Map<String, FahDataPointDebouncer> currentDebouncers = debouncers;
+		FahDataPointDebouncer debouncer = currentDebouncers != null ? currentDebouncers.get(dataPointId) : null;
+		if (debouncer != null) {
+			return debouncer;
+		}
+		Map<String, FahDataPointDebouncer> currentChannelDebouncers = channelDebouncers;
+		return currentChannelDebouncers != null
+				? currentChannelDebouncers.computeIfAbsent(dataPointId, k -> new FahDataPointDebouncer(this, k))
+				: null;
+	}
+
+	private Map<String, FahDataPointDebouncer> debouncers() {
+		Map<String, FahDataPointDebouncer> currentDebouncers = debouncers;
+		if (currentDebouncers == null) {
+			synchronized (this) {
+				currentDebouncers = debouncers;
+				if (currentDebouncers == null) {
+					currentDebouncers = new ConcurrentHashMap<>();
+					debouncers = currentDebouncers;
+				}
+			}
+		}
+		return currentDebouncers;
+	}
+
+	private static final class ConfirmingDataPoint {
+
+		private final String dataPointId;
+		private final UnaryOperator<String> value;
+		private final boolean intermediateValues;
+
+		private ConfirmingDataPoint(String dataPointId, UnaryOperator<String> value, boolean intermediateValues) {
+			this.dataPointId = dataPointId;
+			this.value = value;
+			this.intermediateValues = intermediateValues;
+		}
+
 	}
 
 }
@@ -21,7 +21,7 @@
  */
 public abstract class AbstractFahPart {
 
-	private FahProject project;
+	private volatile FahProject project;
 
 	protected AbstractFahPart() {
 		super();
@@ -31,12 +31,32 @@ public FahProject getProject() {
 		return project;
 	}
 
+	/**
+	 * @param part Description of this part for the exception message.
+	 * @throws IllegalStateException if this part is not attached to a project.
+	 */
+	final FahProject requireProject(String part) {
+		FahProject project = this.project;
+		if (project == null) {
+			throw new IllegalStateException(part + " is not attached to a project");
+		}
+		return project;
+	}
+
 	void setProject(FahProject project) {
 		if (this.project == project) {
 			return;
 		}
 		this.project = project;
+		projectChanged();
 		this.project.addPart(this);
 	}
 
+	/**
+	 * Called after the part was attached to a (different) project.
+	 */
+	void projectChanged() {
+		// nop
+	}
+
 }
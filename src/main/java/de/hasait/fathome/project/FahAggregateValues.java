@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+/**
+ * Immutable summary of switches, blinds and dimmers, either of a room or floor or the contribution of a single channel.
+ */
+public final class FahAggregateValues {
+
+	public static final FahAggregateValues NONE = new FahAggregateValues(0, 0, 0, 0, 0, 0, 0);
+
+	public static FahAggregateValues ofBlind(boolean moving, int position) {
+		return new FahAggregateValues(0, 0, 1, moving ? 1 : 0, position, 0, 0);
+	}
+
+	public static FahAggregateValues ofDimmer(int dimLevel) {
+		return new FahAggregateValues(0, 0, 0, 0, 0, 1, dimLevel);
+	}
+
+	public static FahAggregateValues ofSwitch(boolean on) {
+		return new FahAggregateValues(1, on ? 1 : 0, 0, 0, 0, 0, 0);
+	}
+
+	private final int switchCount;
+	private final int switchesOnCount;
+	private final int blindCount;
+	private final int movingBlindCount;
+	private final long positionSum;
+	private final int dimmerCount;
+	private final long dimLevelSum;
+
+	private FahAggregateValues(int switchCount, int switchesOnCount, int blindCount, int movingBlindCount, long positionSum,
+			int dimmerCount, long dimLevelSum) {
+		super();
+
+		this.switchCount = switchCount;
+		this.switchesOnCount = switchesOnCount;
+		this.blindCount = blindCount;
+		this.movingBlindCount = movingBlindCount;
+		this.positionSum = positionSum;
+		this.dimmerCount = dimmerCount;
+		this.dimLevelSum = dimLevelSum;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof FahAggregateValues)) {
+			return false;
+		}
+		FahAggregateValues that = (FahAggregateValues) o;
+		return switchCount == that.switchCount && switchesOnCount == that.switchesOnCount && blindCount == that.blindCount
+				&& movingBlindCount == that.movingBlindCount && positionSum == that.positionSum && dimmerCount == that.dimmerCount
+				&& dimLevelSum == that.dimLevelSum;
+	}
+
+	/**
+	 * @return Average dim level of all dimmers; <code>0</code> if there are none.
+	 */
+	public double getAverageDimLevel() {
+		return dimmerCount > 0 ? (double) dimLevelSum / dimmerCount : 0.0;
+	}
+
+	/**
+	 * @return Average position of all blinds (0 = up; 100 = down); <code>0</code> if there are none.
+	 */
+	public double getAveragePosition() {
+		return blindCount > 0 ? (double) positionSum / blindCount : 0.0;
+	}
+
+	public int getBlindCount() {
+		return blindCount;
+	}
+
+	public long getDimLevelSum() {
+		return dimLevelSum;
+	}
+
+	public int getDimmerCount() {
+		return dimmerCount;
+	}
+
+	public int getMovingBlindCount() {
+		return movingBlindCount;
+	}
+
+	public long getPositionSum() {
+		return positionSum;
+	}
+
+	public int getSwitchCount() {
+		return switchCount;
+	}
+
+	public int getSwitchesOnCount() {
+		return switchesOnCount;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = switchCount;
+		result = 31 * result + switchesOnCount;
+		result = 31 * result + blindCount;
+		result = 31 * result + movingBlindCount;
+		result = 31 * result + Long.hashCode(positionSum);
+		result = 31 * result + dimmerCount;
+		result = 31 * result + Long.hashCode(dimLevelSum);
+		return result;
+	}
+
+	public FahAggregateValues minus(FahAggregateValues other) {
+		return new FahAggregateValues(switchCount - other.switchCount, switchesOnCount - other.switchesOnCount,
+				blindCount - other.blindCount, movingBlindCount - other.movingBlindCount, positionSum - other.positionSum,
+				dimmerCount - other.dimmerCount, dimLevelSum - other.dimLevelSum);
+	}
+
+	public FahAggregateValues plus(FahAggregateValues other) {
+		return new FahAggregateValues(switchCount + other.switchCount, switchesOnCount + other.switchesOnCount,
+				blindCount + other.blindCount, movingBlindCount + other.movingBlindCount, positionSum + other.positionSum,
+				dimmerCount + other.dimmerCount, dimLevelSum + other.dimLevelSum);
+	}
+
+	@Override
+	public String toString() {
+		return "switches " + switchesOnCount + "/" + switchCount + " on, blinds " + movingBlindCount + "/" + blindCount
+				+ " moving, avg position " + getAveragePosition() + ", avg dim level " + getAverageDimLevel();
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Summary of the switches, blinds and dimmers of a room or floor, maintained incrementally as datapoints change.
+ * <p>
+ * Aggregates are keyed by room or floor id and therefore, like their listeners, survive reloads of the project. Listeners are
+ * called on a thread that applied a change, once that thread holds no locks; changes applied while listeners run are reported
+ * together in the next call.
+ */
+public final class FahAggregates {
+
+	private static final Logger log = LoggerFactory.getLogger(FahAggregates.class);
+
+	private final boolean floor;
+	private final int id;
+	private final List<FahAggregatesListener> listeners = new CopyOnWriteArrayList<>();
+
+	private volatile FahAggregateValues values = FahAggregateValues.NONE;
+	/**
+	 * Values passed to the listeners last; only accessed by the thread firing changes, see {@link FahChannelIndex}.
+	 */
+	private FahAggregateValues firedValues = FahAggregateValues.NONE;
+	private final AtomicBoolean firePending = new AtomicBoolean();
+
+	FahAggregates(boolean floor, int id) {
+		super();
+
+		this.floor = floor;
+		this.id = id;
+	}
+
+	public FahListenerRegistration addListener(FahAggregatesListener listener) {
+		listeners.add(listener);
+		return () -> listeners.remove(listener);
+	}
+
+	/**
+	 * @return Id of the room or floor.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public FahAggregateValues getValues() {
+		return values;
+	}
+
+	/**
+	 * @return <code>true</code> for the aggregates of a floor, <code>false</code> for a room.
+	 */
+	public boolean isFloor() {
+		return floor;
+	}
+
+	@Override
+	public String toString() {
+		return (floor ? "floor " : "room ") + id + ": " + values;
+	}
+
+	/**
+	 * Notify the listeners of the values changed since the last call.
+	 */
+	void fireChanged() {
+		firePending.set(false);
+		FahAggregateValues oldValues = firedValues;
+		FahAggregateValues newValues = values;
+		if (newValues.equals(oldValues)) {
+			return;
+		}
+		firedValues = newValues;
+		for (FahAggregatesListener listener : listeners) {
+			try {
+				listener.aggregatesChanged(this, oldValues, newValues);
+			} catch (RuntimeException e) {
+				log.warn("Aggregates listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Replace the contribution of a channel; the listeners are notified later by {@link #fireChanged()}.
+	 *
+	 * @return <code>true</code> if {@link #fireChanged()} has to be scheduled, <code>false</code> if it is already pending.
+	 */
+	boolean update(FahAggregateValues oldContribution, FahAggregateValues newContribution) {
+		FahAggregateValues oldValues = values;
+		FahAggregateValues newValues = oldValues.minus(oldContribution).plus(newContribution);
+		if (newValues.equals(oldValues)) {
+			return false;
+		}
+		values = newValues;
+		return firePending.compareAndSet(false, true);
+	}
+
+}
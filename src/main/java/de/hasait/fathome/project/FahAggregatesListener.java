@@ -14,20 +14,14 @@
  * limitations under the License.
  */
 
-package de.hasait.fathome.comm.xml.project;
-
-import javax.xml.bind.annotation.XmlAttribute;
+package de.hasait.fathome.project;
 
 /**
- *
+ * Receives changes of the {@link FahAggregates} of a room or floor.
  */
-public class PxFunction {
+@FunctionalInterface
+public interface FahAggregatesListener {
 
-	@XmlAttribute
-	public String nameId;
-	@XmlAttribute
-	public String functionId;
-	@XmlAttribute
-	public String name;
+	void aggregatesChanged(FahAggregates aggregates, FahAggregateValues oldValues, FahAggregateValues newValues);
 
 }
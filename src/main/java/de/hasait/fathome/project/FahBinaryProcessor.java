@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of a {@link FahProject}, used to serve a project from a local cache before
+ * <code>RemoteInterface.getAll</code> has completed.
+ * <p>
+ * The snapshot contains the same information as the project XML: sysap and config values, strings, functions, floors, rooms,
+ * devices with their parameters and channels with their datapoint values. Channels are restored through the channel factory and
+ * device processors, exactly like when loading XML.
+ */
+public final class FahBinaryProcessor {
+
+	private static final int MAGIC = 0x46414853; // FAHS
+	private static final int FORMAT_VERSION = 1;
+
+	public static void readProject(InputStream in, FahProject fahProject, FahChannelFactory channelFactory,
+			FahDeviceProcessor deviceProcessor) throws IOException {
+		DataInputStream dataIn = new DataInputStream(in);
+		if (dataIn.readInt() != MAGIC) {
+			throw new IOException("Not a project snapshot");
+		}
+		int formatVersion = dataIn.readInt();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported project snapshot version: " + formatVersion);
+		}
+
+		fahProject.setMrhaVersion(readString(dataIn));
+		fahProject.setMrhaBuild(readString(dataIn));
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			fahProject.setFahSysapValue(readString(dataIn), readString(dataIn));
+		}
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			fahProject.setFahConfigValue(readString(dataIn), readString(dataIn));
+		}
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			FahString fahString = new FahString(dataIn.readInt());
+			fahString.setValue(readString(dataIn));
+			fahProject.addPart(fahString);
+		}
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			FahFunction fahFunction = new FahFunction(dataIn.readInt());
+			fahFunction.setFidName(readString(dataIn));
+			fahFunction.setName(fahProject.getStringById(readId(dataIn)));
+			fahProject.addPart(fahFunction);
+		}
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			FahFloor fahFloor = new FahFloor(dataIn.readInt());
+			fahFloor.setName(readString(dataIn));
+			fahFloor.setLevel(dataIn.readInt());
+			for (int j = dataIn.readInt(); j > 0; j--) {
+				FahRoom fahRoom = new FahRoom(fahFloor, dataIn.readInt());
+				fahRoom.setName(readString(dataIn));
+				fahProject.addPart(fahRoom);
+			}
+			fahProject.addPart(fahFloor);
+		}
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			readDevice(dataIn, fahProject, channelFactory, deviceProcessor);
+		}
+	}
+
+	public static void writeProject(FahProject fahProject, OutputStream out) throws IOException {
+		DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(FORMAT_VERSION);
+
+		writeString(dataOut, fahProject.getMrhaVersion());
+		writeString(dataOut, fahProject.getMrhaBuild());
+		writeStringMap(dataOut, fahProject.getFahSysapValues());
+		writeStringMap(dataOut, fahProject.getFahConfigValues());
+		Collection<FahString> strings = fahProject.getAllStrings();
+		dataOut.writeInt(strings.size());
+		for (FahString fahString : strings) {
+			dataOut.writeInt(fahString.getId());
+			writeString(dataOut, fahString.getValue());
+		}
+		Collection<FahFunction> functions = fahProject.getAllFunctions();
+		dataOut.writeInt(functions.size());
+		for (FahFunction fahFunction : functions) {
+			dataOut.writeInt(fahFunction.getId());
+			writeString(dataOut, fahFunction.getFidName());
+			writeId(dataOut, fahFunction.getName() != null ? fahFunction.getName().getId() : null);
+		}
+		Collection<FahFloor> floors = fahProject.getAllFloors();
+		dataOut.writeInt(floors.size());
+		for (FahFloor fahFloor : floors) {
+			dataOut.writeInt(fahFloor.getId());
+			writeString(dataOut, fahFloor.getName());
+			dataOut.writeInt(fahFloor.getLevel());
+			Collection<FahRoom> rooms = fahFloor.getRooms();
+			dataOut.writeInt(rooms.size());
+			for (FahRoom fahRoom : rooms) {
+				dataOut.writeInt(fahRoom.getId());
+				writeString(dataOut, fahRoom.getName());
+			}
+		}
+		Collection<FahDevice> devices = fahProject.getAllDevices();
+		dataOut.writeInt(devices.size());
+		for (FahDevice fahDevice : devices) {
+			writeDevice(dataOut, fahDevice);
+		}
+		dataOut.flush();
+	}
+
+	private static void readDevice(DataInputStream dataIn, FahProject fahProject, FahChannelFactory channelFactory,
+			FahDeviceProcessor deviceProcessor) throws IOException {
+		FahDevice fahDevice = new FahDevice(readString(dataIn));
+		fahDevice.setDeviceId(readString(dataIn));
+		fahDevice.setType(fahProject.getStringById(readId(dataIn)));
+		fahDevice.setFunction(fahProject.getFunctionById(readId(dataIn)));
+		fahDevice.setName(readString(dataIn));
+		fahDevice.setRoom(fahProject.getRoomById(readId(dataIn)));
+		fahProject.addPart(fahDevice);
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			fahDevice.setParameter(readString(dataIn), readString(dataIn));
+		}
+		// device processors derive channels from parameters; those channels are part of the snapshot and reused below
+		deviceProcessor.processDevice(fahDevice);
+
+		for (int i = dataIn.readInt(); i > 0; i--) {
+			String channelId = readString(dataIn);
+			Integer functionId = readId(dataIn);
+			String name = readString(dataIn);
+			AbstractFahChannel fahChannel = fahDevice.getChannel(channelId);
+			if (fahChannel == null) {
+				fahChannel = channelFactory.createChannel(fahDevice, channelId, fahProject.getFunctionById(functionId));
+				fahChannel.setName(name);
+				fahProject.addPart(fahChannel);
+			}
+			for (int j = dataIn.readInt(); j > 0; j--) {
+				fahChannel.setDataPoint(readString(dataIn), readString(dataIn));
+			}
+		}
+	}
+
+	private static Integer readId(DataInputStream dataIn) throws IOException {
+		return dataIn.readBoolean() ? dataIn.readInt() : null;
+	}
+
+	private static String readString(DataInputStream dataIn) throws IOException {
+		int length = dataIn.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		dataIn.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeDevice(DataOutputStream dataOut, FahDevice fahDevice) throws IOException {
+		writeString(dataOut, fahDevice.getSerialNumber());
+		writeString(dataOut, fahDevice.getDeviceId());
+		writeId(dataOut, fahDevice.getType() != null ? fahDevice.getType().getId() : null);
+		writeId(dataOut, fahDevice.getFunction() != null ? fahDevice.getFunction().getId() : null);
+		writeString(dataOut, fahDevice.getName());
+		writeId(dataOut, fahDevice.getRoom() != null ? fahDevice.getRoom().getId() : null);
+		List<String> parameterIds = new ArrayList<>(fahDevice.getParameterIds());
+		dataOut.writeInt(parameterIds.size());
+		for (String parameterId : parameterIds) {
+			writeString(dataOut, parameterId);
+			writeString(dataOut, fahDevice.getParameterValue(parameterId));
+		}
+		Collection<AbstractFahChannel> channels = fahDevice.getAllChannels();
+		dataOut.writeInt(channels.size());
+		for (AbstractFahChannel fahChannel : channels) {
+			writeString(dataOut, fahChannel.getId());
+			writeId(dataOut, fahChannel.getFunction() != null ? fahChannel.getFunction().getId() : null);
+			writeString(dataOut, fahChannel.getName());
+			List<String> dataPointIds = new ArrayList<>(fahChannel.getDataPointIds());
+			dataOut.writeInt(dataPointIds.size());
+			for (String dataPointId : dataPointIds) {
+				writeString(dataOut, dataPointId);
+				writeString(dataOut, fahChannel.getDataPointValue(dataPointId));
+			}
+		}
+	}
+
+	private static void writeId(DataOutputStream dataOut, Integer id) throws IOException {
+		dataOut.writeBoolean(id != null);
+		if (id != null) {
+			dataOut.writeInt(id);
+		}
+	}
+
+	private static void writeString(DataOutputStream dataOut, String value) throws IOException {
+		if (value == null) {
+			dataOut.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			dataOut.writeInt(bytes.length);
+			dataOut.write(bytes);
+		}
+	}
+
+	private static void writeStringMap(DataOutputStream dataOut, Map<String, String> map) throws IOException {
+		dataOut.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(dataOut, entry.getKey());
+			writeString(dataOut, entry.getValue());
+		}
+	}
+
+	private FahBinaryProcessor() {
+		super();
+	}
+
+}
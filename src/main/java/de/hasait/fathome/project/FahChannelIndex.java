@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Secondary indexes of the channels of a project by class, function, room and floor, and the aggregates of rooms and floors.
+ * <p>
+ * Rooms and floors are indexed by id, so the indexes do not retain removed parts. Writers are serialized, readers get live views
+ * without locking.
+ * <p>
+ * Each indexed channel contributes {@link AbstractFahChannel#getAggregateContribution()} to the aggregates of its room and floor.
+ * The contribution is replaced when a datapoint changes and moved when the channel changes room or floor, so aggregates are
+ * maintained in constant time per change.
+ * <p>
+ * Aggregates listeners are not called while the index or a channel is locked: changed aggregates are queued and fired by
+ * {@link #fireAggregatesChanged()}, which the writers call after releasing their locks. One thread fires at a time, so the
+ * listeners of an aggregates see its changes in order.
+ */
+final class FahChannelIndex {
+
+	private final Map<Class<?>, Set<AbstractFahChannel>> channelsByClass = new ConcurrentHashMap<>();
+	private final Map<Integer, Set<AbstractFahChannel>> channelsByFunctionId = new ConcurrentHashMap<>();
+	private final Map<String, Set<AbstractFahChannel>> channelsByFidName = new ConcurrentHashMap<>();
+	private final Map<Integer, Set<AbstractFahChannel>> channelsByRoomId = new ConcurrentHashMap<>();
+	private final Map<Integer, Set<AbstractFahChannel>> channelsByFloorId = new ConcurrentHashMap<>();
+	private final Map<Integer, FahAggregates> aggregatesByRoomId = new ConcurrentHashMap<>();
+	private final Map<Integer, FahAggregates> aggregatesByFloorId = new ConcurrentHashMap<>();
+	private final Queue<FahAggregates> changedAggregates = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean firing = new AtomicBoolean();
+
+	FahChannelIndex() {
+		super();
+	}
+
+	/**
+	 * @param type Matches subclasses, too.
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends AbstractFahChannel> Collection<T> getByClass(Class<T> type) {
+		return (Collection<T>) view(channelsByClass, type);
+	}
+
+	FahAggregates getAggregatesByFloorId(int floorId) {
+		return aggregatesByFloorId.computeIfAbsent(floorId, id -> new FahAggregates(true, id));
+	}
+
+	FahAggregates getAggregatesByRoomId(int roomId) {
+		return aggregatesByRoomId.computeIfAbsent(roomId, id -> new FahAggregates(false, id));
+	}
+
+	Collection<AbstractFahChannel> getByFidName(String fidName) {
+		return view(channelsByFidName, fidName);
+	}
+
+	Collection<AbstractFahChannel> getByFloorId(int floorId) {
+		return view(channelsByFloorId, floorId);
+	}
+
+	Collection<AbstractFahChannel> getByFunctionId(int functionId) {
+		return view(channelsByFunctionId, functionId);
+	}
+
+	Collection<AbstractFahChannel> getByRoomId(int roomId) {
+		return view(channelsByRoomId, roomId);
+	}
+
+	void add(AbstractFahChannel channel) {
+		synchronized (this) {
+			reindex(channel);
+		}
+		fireAggregatesChanged();
+	}
+
+	/**
+	 * Notify the listeners of the aggregates changed meanwhile; must not be called while holding a lock. If another thread is
+	 * firing already, it takes over the changes queued by this one.
+	 */
+	void fireAggregatesChanged() {
+		while (!changedAggregates.isEmpty() && firing.compareAndSet(false, true)) {
+			try {
+				FahAggregates aggregates;
+				while ((aggregates = changedAggregates.poll()) != null) {
+					aggregates.fireChanged();
+				}
+			} finally {
+				firing.set(false);
+			}
+		}
+	}
+
+	void remove(AbstractFahChannel channel) {
+		synchronized (this) {
+			Keys oldKeys = keysOf(channel);
+			if (oldKeys != null) {
+				unindex(channel, oldKeys);
+				channel.setIndexKeys(null);
+				updateAggregates(oldKeys, channel.getAggregatedContribution(), FahAggregateValues.NONE);
+				channel.setAggregatedContribution(FahAggregateValues.NONE);
+			}
+		}
+		fireAggregatesChanged();
+	}
+
+	/**
+	 * Re-index a channel after its function, room or floor changed; no-op if the channel is not indexed here.
+	 */
+	void update(AbstractFahChannel channel) {
+		synchronized (this) {
+			if (keysOf(channel) != null) {
+				reindex(channel);
+			}
+		}
+		fireAggregatesChanged();
+	}
+
+	/**
+	 * Replace the contribution of a channel to the aggregates after one of its datapoints changed. Called with the channel
+	 * locked, so the caller has to {@link #fireAggregatesChanged()} afterwards.
+	 */
+	synchronized void updateContribution(AbstractFahChannel channel) {
+		Keys keys = keysOf(channel);
+		if (keys == null) {
+			return;
+		}
+		FahAggregateValues oldContribution = channel.getAggregatedContribution();
+		FahAggregateValues newContribution = channel.getAggregateContribution();
+		if (!newContribution.equals(oldContribution)) {
+			updateAggregates(keys, oldContribution, newContribution);
+			channel.setAggregatedContribution(newContribution);
+		}
+	}
+
+	/**
+	 * Re-index all channels of a function after its FID name changed.
+	 */
+	void updateFunction(FahFunction function) {
+		synchronized (this) {
+			Set<AbstractFahChannel> channels = channelsByFunctionId.get(function.getId());
+			if (channels != null) {
+				new ArrayList<>(channels).forEach(this::reindex);
+			}
+		}
+		fireAggregatesChanged();
+	}
+
+	private static <K> void index(Map<K, Set<AbstractFahChannel>> map, K key, AbstractFahChannel channel) {
+		if (key != null) {
+			map.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(channel);
+		}
+	}
+
+	private static <K> void unindex(Map<K, Set<AbstractFahChannel>> map, K key, AbstractFahChannel channel) {
+		if (key != null) {
+			Set<AbstractFahChannel> channels = map.get(key);
+			if (channels != null) {
+				channels.remove(channel);
+			}
+		}
+	}
+
+	private static <K> Collection<AbstractFahChannel> view(Map<K, Set<AbstractFahChannel>> map, K key) {
+		// sets are never removed, so the view stays live
+		Set<AbstractFahChannel> channels = map.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+		return Collections.unmodifiableSet(channels);
+	}
+
+	private void index(AbstractFahChannel channel, Keys keys) {
+		for (Class<?> type : keys.types) {
+			index(channelsByClass, type, channel);
+		}
+		index(channelsByFunctionId, keys.functionId, channel);
+		index(channelsByFidName, keys.fidName, channel);
+		index(channelsByRoomId, keys.roomId, channel);
+		index(channelsByFloorId, keys.floorId, channel);
+	}
+
+	private Keys keysOf(AbstractFahChannel channel) {
+		Keys keys = channel.getIndexKeys();
+		// a channel adopted from a reloaded project still carries the keys of the old index
+		return keys != null && keys.index == this ? keys : null;
+	}
+
+	private void reindex(AbstractFahChannel channel) {
+		Keys oldKeys = keysOf(channel);
+		Keys newKeys = new Keys(this, channel);
+		if (newKeys.equals(oldKeys)) {
+			return;
+		}
+		FahAggregateValues oldContribution = FahAggregateValues.NONE;
+		if (oldKeys != null) {
+			unindex(channel, oldKeys);
+			oldContribution = channel.getAggregatedContribution();
+			updateAggregates(oldKeys, oldContribution, FahAggregateValues.NONE);
+		}
+		index(channel, newKeys);
+		channel.setIndexKeys(newKeys);
+		FahAggregateValues newContribution = channel.getAggregateContribution();
+		updateAggregates(newKeys, FahAggregateValues.NONE, newContribution);
+		channel.setAggregatedContribution(newContribution);
+	}
+
+	private void updateAggregates(Keys keys, FahAggregateValues oldContribution, FahAggregateValues newContribution) {
+		if (oldContribution.equals(newContribution)) {
+			return;
+		}
+		if (keys.roomId != null) {
+			updateAggregates(getAggregatesByRoomId(keys.roomId), oldContribution, newContribution);
+		}
+		if (keys.floorId != null) {
+			updateAggregates(getAggregatesByFloorId(keys.floorId), oldContribution, newContribution);
+		}
+	}
+
+	private void updateAggregates(FahAggregates aggregates, FahAggregateValues oldContribution,
+								  FahAggregateValues newContribution) {
+		if (aggregates.update(oldContribution, newContribution)) {
+			changedAggregates.add(aggregates);
+		}
+	}
+
+	private void unindex(AbstractFahChannel channel, Keys keys) {
+		for (Class<?> type : keys.types) {
+			unindex(channelsByClass, type, channel);
+		}
+		unindex(channelsByFunctionId, keys.functionId, channel);
+		unindex(channelsByFidName, keys.fidName, channel);
+		unindex(channelsByRoomId, keys.roomId, channel);
+		unindex(channelsByFloorId, keys.floorId, channel);
+	}
+
+	/**
+	 * Keys a channel is currently indexed by.
+	 */
+	static final class Keys {
+
+		private final FahChannelIndex index;
+		private final List<Class<?>> types = new ArrayList<>();
+		private final Integer functionId;
+		private final String fidName;
+		private final Integer roomId;
+		private final Integer floorId;
+
+		private Keys(FahChannelIndex index, AbstractFahChannel channel) {
+			super();
+
+			this.index = index;
+			for (Class<?> type = channel.getClass(); type != AbstractFahPart.class; type = type.getSuperclass()) {
+				types.add(type);
+			}
+			FahFunction function = channel.getFunction();
+			functionId = function != null ? function.getId() : null;
+			fidName = function != null ? function.getFidName() : null;
+			FahRoom room = channel.getDevice().getRoom();
+			roomId = room != null ? room.getId() : null;
+			FahFloor floor = room != null ? room.getFloor() : null;
+			floorId = floor != null ? floor.getId() : null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Keys)) {
+				return false;
+			}
+			Keys keys = (Keys) o;
+			return index == keys.index && types.equals(keys.types) && Objects.equals(functionId, keys.functionId) && Objects
+					.equals(fidName, keys.fidName) && Objects.equals(roomId, keys.roomId) && Objects.equals(floorId, keys.floorId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(types, functionId, fidName, roomId, floorId);
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Expectation of an optimistically applied datapoint write, see {@link FahConfirmationTracker}.
+ */
+final class FahCommandConfirmation {
+
+	final AbstractFahChannel channel;
+	final String dataPointId;
+	final String confirmingDataPointId;
+	final String value;
+	final String confirmingValue;
+	/**
+	 * Reports of other values are intermediate steps towards {@link #confirmingValue}.
+	 */
+	final boolean intermediateValues;
+	final long startNanos = System.nanoTime();
+	final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+	String previousValue;
+	volatile FahTimerWheel.Timeout timeout;
+	/**
+	 * The SysAP accepted the RPC; reports of another value received before are stale.
+	 */
+	volatile boolean acknowledged;
+
+	FahCommandConfirmation(AbstractFahChannel channel, String dataPointId, String confirmingDataPointId, String value,
+						   String confirmingValue) {
+		super();
+
+		this.channel = channel;
+		this.dataPointId = dataPointId;
+		this.confirmingDataPointId = confirmingDataPointId;
+		this.value = value;
+		this.confirmingValue = confirmingValue;
+		this.intermediateValues = channel.hasIntermediateConfirmingValues(dataPointId);
+		this.futures.add(new CompletableFuture<>());
+	}
+
+	CompletableFuture<Void> getFuture() {
+		return futures.get(0);
+	}
+
+	void complete(Throwable failure) {
+		FahTimerWheel.Timeout currentTimeout = timeout;
+		if (currentTimeout != null) {
+			currentTimeout.cancel();
+		}
+		for (CompletableFuture<Void> future : futures) {
+			if (failure != null) {
+				future.completeExceptionally(failure);
+			} else {
+				future.complete(null);
+			}
+		}
+	}
+
+}
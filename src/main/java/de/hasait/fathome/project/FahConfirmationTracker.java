@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks writes of {@link AbstractFahChannel#setOptimistic(boolean) optimistic} channels: the value is applied locally when the
+ * command is sent, and confirmed when the SysAP reports it for the confirming datapoint. If the SysAP reports another value after
+ * acknowledging the command, rejects the command or does not report within the timeout, the local value is rolled back. Reports
+ * of another value received before the acknowledgement are stale and ignored, as are intermediate values of datapoints that
+ * approach the written value step by step. Writes without a confirming datapoint, or which the SysAP will not report, are not
+ * tracked.
+ * <p>
+ * Timeouts are handled off the timer thread, as the rollback calls listeners and completes user futures.
+ * <p>
+ * A write to a datapoint with a pending confirmation supersedes it: the older command completes with the newer one, and a
+ * rollback restores the value from before the older command.
+ */
+public class FahConfirmationTracker {
+
+	private static final Logger log = LoggerFactory.getLogger(FahConfirmationTracker.class);
+
+	private volatile long timeoutMillis = 5000;
+	private int pendingCount;
+
+	private final LongAdder confirmedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder timedOutCount = new LongAdder();
+	private final LongAdder latencyNanos = new LongAdder();
+	private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0L);
+
+	public FahConfirmationTracker() {
+		super();
+	}
+
+	public long getConfirmedCount() {
+		return confirmedCount.sum();
+	}
+
+	/**
+	 * @return Longest time from sending a command to its confirmation.
+	 */
+	public long getMaxLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+	}
+
+	/**
+	 * @return Average time from sending a command to its confirmation.
+	 */
+	public double getMeanLatencyMillis() {
+		long count = confirmedCount.sum();
+		return count > 0 ? latencyNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+	}
+
+	/**
+	 * @return Number of commands waiting for confirmation.
+	 */
+	public synchronized int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * @return Number of commands rolled back because the SysAP rejected them or reported another value.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * @return Number of commands rolled back because no confirmation arrived within the timeout.
+	 */
+	public long getTimedOutCount() {
+		return timedOutCount.sum();
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("timeoutMillis < 1: " + timeoutMillis);
+		}
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Apply the value locally and expect its confirmation.
+	 *
+	 * @return <code>null</code> if there is nothing to confirm, as the datapoint already has the value or the SysAP will not
+	 * report it.
+	 */
+	FahCommandConfirmation expect(AbstractFahChannel channel, String dataPointId, String value) {
+		String confirmingDataPointId = channel.getConfirmingDataPointId(dataPointId);
+		String confirmingValue = confirmingDataPointId != null ? channel.getConfirmingValue(dataPointId, value) : null;
+		if (confirmingValue == null) {
+			return null;
+		}
+		FahCommandConfirmation confirmation = new FahCommandConfirmation(channel, dataPointId, confirmingDataPointId, value,
+																		 confirmingValue
+		);
+		Map<String, FahCommandConfirmation> pendingConfirmations = channel.getPendingConfirmations();
+		synchronized (this) {
+			FahCommandConfirmation superseded = pendingConfirmations.get(confirmingDataPointId);
+			if (superseded != null) {
+				confirmation.previousValue = superseded.previousValue;
+				confirmation.futures.addAll(superseded.futures);
+				FahTimerWheel.Timeout supersededTimeout = superseded.timeout;
+				if (supersededTimeout != null) {
+					supersededTimeout.cancel();
+				}
+			} else {
+				confirmation.previousValue = channel.getDataPointValue(dataPointId);
+				if (Objects.equals(confirmation.previousValue, value)) {
+					return null;
+				}
+				pendingCount++;
+			}
+			pendingConfirmations.put(confirmingDataPointId, confirmation);
+		}
+		channel.setDataPoint(dataPointId, value);
+		confirmation.timeout = FahTimerWheel.getDefault().scheduleAsync(() -> {
+			if (remove(confirmation)) {
+				timedOutCount.increment();
+				rollback(confirmation, new TimeoutException(
+						"No confirmation of " + channel.getName() + "@" + dataPointId + "=" + value + " within " + timeoutMillis
+								+ "ms"));
+			}
+		}, timeoutMillis);
+		return confirmation;
+	}
+
+	/**
+	 * The command could not be sent.
+	 */
+	void failed(FahCommandConfirmation confirmation, Throwable failure) {
+		if (remove(confirmation)) {
+			rejectedCount.increment();
+			rollback(confirmation,
+					 failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+		}
+	}
+
+	/**
+	 * A report of another value than the pending command, for the written or the confirming datapoint, received before the SysAP
+	 * acknowledged the command was sent before the command was applied, e.g. it was still queued in the update pipeline. It must
+	 * neither be applied nor reject the command.
+	 */
+	boolean isStale(AbstractFahChannel channel, String dataPointId, String value) {
+		for (FahCommandConfirmation confirmation : channel.getPendingConfirmations().values()) {
+			if (confirmation.acknowledged) {
+				continue;
+			}
+			if (confirmation.confirmingDataPointId.equals(dataPointId) && !Objects.equals(confirmation.confirmingValue, value)
+					|| confirmation.dataPointId.equals(dataPointId) && !Objects.equals(confirmation.value, value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The SysAP reported a value; called after it has been applied and only if it is not {@link #isStale stale}.
+	 */
+	void reported(AbstractFahChannel channel, String dataPointId, String value) {
+		Map<String, FahCommandConfirmation> pendingConfirmations = channel.getPendingConfirmations();
+		FahCommandConfirmation confirmation = pendingConfirmations.get(dataPointId);
+		if (confirmation == null) {
+			return;
+		}
+		boolean confirmed = Objects.equals(confirmation.confirmingValue, value);
+		if (!confirmed && confirmation.intermediateValues || !remove(confirmation)) {
+			return;
+		}
+		if (confirmed) {
+			long latency = System.nanoTime() - confirmation.startNanos;
+			confirmedCount.increment();
+			latencyNanos.add(latency);
+			maxLatencyNanos.accumulate(latency);
+			confirmation.complete(null);
+			return;
+		}
+		rejectedCount.increment();
+		rollback(confirmation, new IllegalStateException(
+				"SysAP reported " + channel.getName() + "@" + dataPointId + "=" + value + " instead of " + confirmation.confirmingValue));
+	}
+
+	private synchronized boolean remove(FahCommandConfirmation confirmation) {
+		if (confirmation.channel.getPendingConfirmations().remove(confirmation.confirmingDataPointId, confirmation)) {
+			pendingCount--;
+			return true;
+		}
+		return false;
+	}
+
+	private void rollback(FahCommandConfirmation confirmation, Throwable failure) {
+		log.warn("Rolling back " + confirmation.channel.getName() + "@" + confirmation.dataPointId + ": " + failure.getMessage());
+		AbstractFahChannel channel = confirmation.channel;
+		channel.replaceDataPoint(confirmation.dataPointId, confirmation.value, confirmation.previousValue);
+		confirmation.complete(failure);
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+/**
+ * Current value of a datapoint or parameter together with the sequence number of its last change and the time it was last
+ * reported.
+ */
+public final class FahDataPointChange {
+
+	private final int handle;
+	private final AbstractFahChannel channel;
+	private final FahDevice device;
+	private final String id;
+	private final String value;
+	private final long sequence;
+	private final long timestamp;
+
+	FahDataPointChange(int handle, AbstractFahChannel channel, FahDevice device, String id, String value, long sequence,
+			long timestamp) {
+		super();
+
+		this.handle = handle;
+		this.channel = channel;
+		this.device = device;
+		this.id = id;
+		this.value = value;
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return <code>null</code> for a parameter.
+	 */
+	public AbstractFahChannel getChannel() {
+		return channel;
+	}
+
+	public FahDevice getDevice() {
+		return device;
+	}
+
+	public int getHandle() {
+		return handle;
+	}
+
+	/**
+	 * @return Datapoint or parameter id.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return Time the value was last reported, changed or not, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isParameter() {
+		return channel == null;
+	}
+
+	@Override
+	public String toString() {
+		String path = channel != null ? device.getSerialNumber() + "/" + channel.getId() + "/" + id : device.getSerialNumber() + "/" + id;
+		return "#" + sequence + " " + path + "=" + value;
+	}
+
+}
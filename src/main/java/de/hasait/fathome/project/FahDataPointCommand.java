@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import rocks.xmpp.extensions.rpc.model.Value;
+
+/**
+ * Reusable write access to one datapoint of a channel: the channel is resolved and the datapoint path is encoded once, and the
+ * encoding of the last written value is reused, so repeated writes of the same value allocate no parameters.
+ * <p>
+ * Writes of {@link AbstractFahChannel#isDebouncing(String) debounced} datapoints go through the debouncer of the channel.
+ */
+public final class FahDataPointCommand {
+
+	private final AbstractFahChannel channel;
+	private final String dataPointId;
+	private final Value dpPath;
+
+	private volatile EncodedValue lastValue;
+
+	FahDataPointCommand(AbstractFahChannel channel, String dataPointId) {
+		super();
+
+		this.channel = channel;
+		this.dataPointId = dataPointId;
+		this.dpPath = channel.dataPointPath(dataPointId);
+	}
+
+	public AbstractFahChannel getChannel() {
+		return channel;
+	}
+
+	public String getDataPointId() {
+		return dataPointId;
+	}
+
+	/**
+	 * Write the value and wait for the SysAP to answer.
+	 */
+	public void set(String value) {
+		if (channel.isDebouncing(dataPointId)) {
+			channel.rpcSetDataPoint(dataPointId, value);
+		} else {
+			channel.sendDataPoint(dataPointId, dpPath, value, encode(value));
+		}
+	}
+
+	/**
+	 * Write the value without blocking, see {@link AbstractFahChannel#rpcSetDataPointAsync(String, String)}.
+	 */
+	public CompletableFuture<Void> setAsync(String value) {
+		if (channel.isDebouncing(dataPointId)) {
+			return channel.rpcSetDataPointAsync(dataPointId, value);
+		}
+		return channel.sendDataPointAsync(dataPointId, dpPath, value, encode(value));
+	}
+
+	@Override
+	public String toString() {
+		return channel.getName() + "@" + dataPointId;
+	}
+
+	private Value encode(String value) {
+		EncodedValue current = lastValue;
+		if (current != null && Objects.equals(current.value, value)) {
+			return current.dpValue;
+		}
+		current = new EncodedValue(value);
+		lastValue = current;
+		return current.dpValue;
+	}
+
+	private static final class EncodedValue {
+
+		private final String value;
+		private final Value dpValue;
+
+		private EncodedValue(String value) {
+			this.value = value;
+			this.dpValue = Value.of(value);
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import de.hasait.fathome.comm.FahRpcLane;
+
+/**
+ * Latest-wins writer for a single datapoint: while a write is in flight, further writes only replace the value sent next.
+ * <p>
+ * Futures of replaced values complete together with the write of the newer value. The {@link FahRpcLane} is captured when a
+ * value is submitted, as the next write is sent from the completion of the previous one; a write replacing values submitted in
+ * different lanes is sent in the most urgent of them.
+ */
+final class FahDataPointDebouncer {
+
+	private final AbstractFahChannel channel;
+	private final String dataPointId;
+
+	private boolean inFlight;
+	private String pendingValue;
+	private FahRpcLane pendingLane;
+	private List<CompletableFuture<Void>> pendingFutures = new ArrayList<>();
+
+	FahDataPointDebouncer(AbstractFahChannel channel, String dataPointId) {
+		super();
+
+		this.channel = channel;
+		this.dataPointId = dataPointId;
+	}
+
+	CompletableFuture<Void> submit(String value) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		FahRpcLane lane = FahRpcLane.current();
+		synchronized (this) {
+			if (inFlight) {
+				pendingValue = value;
+				pendingLane = pendingLane == null || lane.compareTo(pendingLane) < 0 ? lane : pendingLane;
+				pendingFutures.add(future);
+				return future;
+			}
+			inFlight = true;
+		}
+		send(value, lane, Collections.singletonList(future));
+		return future;
+	}
+
+	private void send(String value, FahRpcLane lane, List<CompletableFuture<Void>> futures) {
+		CompletableFuture<Void> write;
+		try {
+			write = lane.run(() -> channel.sendDataPointAsync(dataPointId, value));
+		} catch (RuntimeException e) {
+			write = new CompletableFuture<>();
+			write.completeExceptionally(e);
+		}
+		write.whenComplete((result, failure) -> {
+			for (CompletableFuture<Void> future : futures) {
+				if (failure != null) {
+					future.completeExceptionally(failure);
+				} else {
+					future.complete(null);
+				}
+			}
+			sendNext();
+		});
+	}
+
+	private void sendNext() {
+		String value;
+		FahRpcLane lane;
+		List<CompletableFuture<Void>> futures;
+		synchronized (this) {
+			if (pendingFutures.isEmpty()) {
+				inFlight = false;
+				return;
+			}
+			value = pendingValue;
+			lane = pendingLane;
+			futures = pendingFutures;
+			pendingValue = null;
+			pendingLane = null;
+			pendingFutures = new ArrayList<>();
+		}
+		send(value, lane, futures);
+	}
+
+}
@@ -14,20 +14,18 @@
  * limitations under the License.
  */
 
-package de.hasait.fathome.comm.xml.project;
-
-import javax.xml.bind.annotation.XmlAttribute;
+package de.hasait.fathome.project;
 
 /**
  *
  */
-public class PxOption {
+@FunctionalInterface
+public interface FahDataPointListener {
 
-	@XmlAttribute
-	public String key;
-	@XmlAttribute
-	public String nameId;
-	@XmlAttribute
-	public String mask;
+	/**
+	 * @param oldValue <code>null</code> if the datapoint had no value.
+	 * @param newValue <code>null</code> if the datapoint was removed.
+	 */
+	void dataPointChanged(AbstractFahChannel channel, String dataPointId, String oldValue, String newValue);
 
 }
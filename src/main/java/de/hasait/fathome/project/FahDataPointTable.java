@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Project-wide storage of all datapoint and parameter values.
+ * <p>
+ * Every <code>serial/channel/datapoint</code> and every <code>serial/parameter</code> is assigned a dense int handle. Values
+ * are stored in chunked array columns indexed by handle, so whole-house scans just walk the columns:
+ * <pre>
+ * for (int handle = 0; handle &lt; table.getHandleLimit(); handle++) {
+ *     AbstractFahChannel channel = table.getChannel(handle);
+ *     ...
+ * }
+ * </pre>
+ * Reads are lock-free. Handles of removed datapoints are released and reused; a released handle has no owner and no value.
+ * <p>
+ * Every change of a value is stamped with a table-wide, strictly increasing sequence number, which allows incremental pulls via
+ * {@link #changesSince(long)}; each chunk tracks its highest sequence number, so a pull skips chunks without changes. Every
+ * report of a value, changed or not, is stamped with the time it was received.
+ * <p>
+ * {@link #snapshot()} returns a read-only point-in-time copy in constant time: chunks are shared with the snapshot and copied by
+ * the next write to them (copy-on-write per chunk and snapshot generation).
+ */
+public class FahDataPointTable {
+
+	private static final int DEFAULT_CHUNK_SHIFT = 8;
+
+	private final int chunkShift;
+	private final int chunkMask;
+	private final boolean readOnly;
+
+	private final AtomicLong sequence;
+
+	private volatile Chunk[] chunks;
+	private volatile int handleLimit;
+	private int[] freeHandles = new int[16];
+	private int freeHandleCount;
+	private volatile long releaseCount;
+	private int generation;
+
+	public FahDataPointTable() {
+		this(DEFAULT_CHUNK_SHIFT);
+	}
+
+	FahDataPointTable(int chunkShift) {
+		this(chunkShift, false, new Chunk[0], 0, 0L, 0L);
+	}
+
+	private FahDataPointTable(int chunkShift, boolean readOnly, Chunk[] chunks, int handleLimit, long sequence,
+			long releaseCount) {
+		super();
+
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1 << chunkShift) - 1;
+		this.readOnly = readOnly;
+		this.chunks = chunks;
+		this.handleLimit = handleLimit;
+		this.sequence = new AtomicLong(sequence);
+		this.releaseCount = releaseCount;
+	}
+
+	/**
+	 * Values changed after the given sequence number, ordered by sequence number. Removed datapoints and parameters are not
+	 * reported.
+	 *
+	 * @param sequence <code>0</code> for all values; otherwise usually {@link #getSequence()} of a previous pull.
+	 */
+	public List<FahDataPointChange> changesSince(long sequence) {
+		List<FahDataPointChange> changes = new ArrayList<>();
+		int limit = handleLimit;
+		for (int handle = 0; handle < limit; handle++) {
+			Chunk chunk = chunk(handle);
+			int index = handle & chunkMask;
+			if (index == 0 && chunk.maxSequence <= sequence) {
+				handle += chunkMask;
+				continue;
+			}
+			// sequence is written after the value, so the value read afterwards is at least as new
+			long handleSequence = chunk.sequences.get(index);
+			if (handleSequence > sequence) {
+				AbstractFahPart owner = chunk.owners.get(index);
+				String value = chunk.values.get(index);
+				if (owner != null && value != null) {
+					AbstractFahChannel channel = owner instanceof AbstractFahChannel ? (AbstractFahChannel) owner : null;
+					FahDevice device = channel != null ? channel.getDevice() : (FahDevice) owner;
+					changes.add(new FahDataPointChange(handle, channel, device, chunk.ids.get(index), value, handleSequence,
+							chunk.timestamps.get(index)));
+				}
+			}
+		}
+		changes.sort((a, b) -> Long.compare(a.getSequence(), b.getSequence()));
+		return changes;
+	}
+
+	/**
+	 * @return Channel owning the datapoint or <code>null</code> if the handle refers to a parameter or is not in use.
+	 */
+	public AbstractFahChannel getChannel(int handle) {
+		AbstractFahPart owner = getOwner(handle);
+		return owner instanceof AbstractFahChannel ? (AbstractFahChannel) owner : null;
+	}
+
+	/**
+	 * @return Device owning the parameter or the channel of the datapoint; <code>null</code> if the handle is not in use.
+	 */
+	public FahDevice getDevice(int handle) {
+		AbstractFahPart owner = getOwner(handle);
+		if (owner instanceof AbstractFahChannel) {
+			return ((AbstractFahChannel) owner).getDevice();
+		}
+		return owner instanceof FahDevice ? (FahDevice) owner : null;
+	}
+
+	/**
+	 * @return Upper bound (exclusive) of all handles in use.
+	 */
+	public int getHandleLimit() {
+		return handleLimit;
+	}
+
+	/**
+	 * @return Datapoint or parameter id; <code>null</code> if the handle is not in use.
+	 */
+	public String getId(int handle) {
+		return chunk(handle).ids.get(handle & chunkMask);
+	}
+
+	/**
+	 * @return Sequence number of the last change.
+	 */
+	public long getSequence() {
+		return sequence.get();
+	}
+
+	/**
+	 * @return Sequence number of the last change of the value; <code>0</code> if the handle is not in use.
+	 */
+	public long getSequence(int handle) {
+		return chunk(handle).sequences.get(handle & chunkMask);
+	}
+
+	/**
+	 * @return Time the value was last reported, changed or not, in milliseconds since the epoch; <code>0</code> if the handle is
+	 * not in use.
+	 */
+	public long getTimestamp(int handle) {
+		return chunk(handle).timestamps.get(handle & chunkMask);
+	}
+
+	public String getValue(int handle) {
+		return chunk(handle).values.get(handle & chunkMask);
+	}
+
+	/**
+	 * Find the handle of a datapoint or parameter.
+	 *
+	 * @param hint Handle to check first, usually the current handle of a live part.
+	 * @return <code>-1</code> if not found.
+	 */
+	public int findHandle(AbstractFahPart owner, String id, int hint) {
+		int limit = handleLimit;
+		if (hint >= 0 && hint < limit && matches(hint, owner, id)) {
+			return hint;
+		}
+		for (int handle = 0; handle < limit; handle++) {
+			if (matches(handle, owner, id)) {
+				return handle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return <code>true</code> if the handle refers to a parameter of a device.
+	 */
+	public boolean isParameter(int handle) {
+		return getOwner(handle) instanceof FahDevice;
+	}
+
+	/**
+	 * @return <code>true</code> for snapshots.
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * @return Read-only, consistent copy of the current state; this table if it is read-only itself.
+	 */
+	public synchronized FahDataPointTable snapshot() {
+		if (readOnly) {
+			return this;
+		}
+		// chunks of older generations are shared with snapshots and must be copied before the next write
+		generation++;
+		return new FahDataPointTable(chunkShift, true, chunks.clone(), handleLimit, sequence.get(), releaseCount);
+	}
+
+	synchronized int allocate(AbstractFahPart owner, String id) {
+		checkWritable();
+		int handle;
+		if (freeHandleCount > 0) {
+			handle = freeHandles[--freeHandleCount];
+		} else {
+			handle = handleLimit;
+			int chunkIndex = handle >>> chunkShift;
+			if (chunkIndex >= chunks.length) {
+				Chunk[] newChunks = Arrays.copyOf(chunks, chunkIndex + 1);
+				newChunks[chunkIndex] = new Chunk(1 << chunkShift, generation);
+				chunks = newChunks;
+			}
+		}
+		Chunk chunk = writableChunk(handle);
+		int index = handle & chunkMask;
+		chunk.ids.set(index, id);
+		chunk.owners.set(index, owner);
+		if (handle == handleLimit) {
+			handleLimit = handle + 1;
+		}
+		return handle;
+	}
+
+	/**
+	 * @return Number of released handles; allows snapshots to detect that no value was removed since.
+	 */
+	long getReleaseCount() {
+		return releaseCount;
+	}
+
+	/**
+	 * Count releases before the handles disappear from their view, so snapshots never see an id gone without a release.
+	 */
+	synchronized void countReleases(int count) {
+		releaseCount += count;
+	}
+
+	/**
+	 * Free a handle for reuse; the release must have been counted with {@link #countReleases(int)} before.
+	 */
+	synchronized void release(int handle) {
+		checkWritable();
+		Chunk chunk = writableChunk(handle);
+		int index = handle & chunkMask;
+		chunk.owners.set(index, null);
+		chunk.ids.set(index, null);
+		chunk.values.set(index, null);
+		chunk.sequences.set(index, 0L);
+		chunk.timestamps.set(index, 0L);
+		if (freeHandleCount == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+		}
+		freeHandles[freeHandleCount++] = handle;
+	}
+
+	/**
+	 * @return Previous value.
+	 */
+	synchronized String setValue(int handle, String value) {
+		return setValue(handle, value, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param timestampMillis When the value was received; stored even if the value did not change.
+	 * @return Previous value.
+	 */
+	synchronized String setValue(int handle, String value, long timestampMillis) {
+		checkWritable();
+		Chunk chunk = writableChunk(handle);
+		int index = handle & chunkMask;
+		String oldValue = chunk.values.getAndSet(index, value);
+		chunk.timestamps.set(index, timestampMillis);
+		if (!Objects.equals(oldValue, value)) {
+			long newSequence = sequence.incrementAndGet();
+			chunk.sequences.set(index, newSequence);
+			chunk.maxSequence = newSequence;
+		}
+		return oldValue;
+	}
+
+	private void checkWritable() {
+		if (readOnly) {
+			throw new IllegalStateException("Snapshot is read-only");
+		}
+	}
+
+	private Chunk chunk(int handle) {
+		return chunks[handle >>> chunkShift];
+	}
+
+	private AbstractFahPart getOwner(int handle) {
+		return chunk(handle).owners.get(handle & chunkMask);
+	}
+
+	private boolean matches(int handle, AbstractFahPart owner, String id) {
+		Chunk chunk = chunk(handle);
+		int index = handle & chunkMask;
+		return chunk.owners.get(index) == owner && id.equals(chunk.ids.get(index));
+	}
+
+	private Chunk writableChunk(int handle) {
+		Chunk[] currentChunks = chunks;
+		int chunkIndex = handle >>> chunkShift;
+		Chunk chunk = currentChunks[chunkIndex];
+		if (chunk.generation != generation) {
+			chunk = new Chunk(chunk, generation);
+			// readers still holding the previous chunk see a consistent older state
+			currentChunks[chunkIndex] = chunk;
+		}
+		return chunk;
+	}
+
+	private static final class Chunk {
+
+		private final AtomicReferenceArray<AbstractFahPart> owners;
+		private final AtomicReferenceArray<String> ids;
+		private final AtomicReferenceArray<String> values;
+		private final AtomicLongArray sequences;
+		private final AtomicLongArray timestamps;
+		private final int generation;
+		/**
+		 * Highest sequence number of the values in this chunk; written by the table under its lock.
+		 */
+		private volatile long maxSequence;
+
+		private Chunk(int size, int generation) {
+			owners = new AtomicReferenceArray<>(size);
+			ids = new AtomicReferenceArray<>(size);
+			values = new AtomicReferenceArray<>(size);
+			sequences = new AtomicLongArray(size);
+			timestamps = new AtomicLongArray(size);
+			this.generation = generation;
+		}
+
+		private Chunk(Chunk source, int generation) {
+			this(source.values.length(), generation);
+			for (int i = 0; i < source.values.length(); i++) {
+				owners.set(i, source.owners.get(i));
+				ids.set(i, source.ids.get(i));
+				values.set(i, source.values.get(i));
+				sequences.set(i, source.sequences.get(i));
+				timestamps.set(i, source.timestamps.get(i));
+			}
+			maxSequence = source.maxSequence;
+		}
+
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Values of one channel (datapoints) or one device (parameters) as a view over a {@link FahDataPointTable}.
+ * <p>
+ * The table, ids and handles are kept in one immutable {@link Slots} instance that is replaced when an id is added or removed or
+ * the values move to another table, which is rare compared to value changes. Writers are serialized by this view, readers are
+ * lock-free. Replaced handles are released only after the new slots are published, so a reader never follows a handle that was
+ * already reused.
+ */
+final class FahDataPointView {
+
+	private static final String[] NO_IDS = new String[0];
+	private static final int[] NO_HANDLES = new int[0];
+
+	/**
+	 * Used while a part is not yet attached to a project.
+	 */
+	private static final int DETACHED_CHUNK_SHIFT = 3;
+
+	private final AbstractFahPart owner;
+
+	private volatile Slots slots = new Slots(null, NO_IDS, NO_HANDLES);
+
+	FahDataPointView(AbstractFahPart owner) {
+		super();
+
+		this.owner = owner;
+	}
+
+	/**
+	 * @return Handle or <code>-1</code> if there is no value for the id.
+	 */
+	int getHandle(String id) {
+		Slots current = slots;
+		int index = current.indexOf(id);
+		return index >= 0 ? current.handles[index] : -1;
+	}
+
+	Set<String> getIds() {
+		return new IdSet(slots.ids);
+	}
+
+	FahDataPointTable getTable() {
+		return slots.table;
+	}
+
+	String getValue(String id) {
+		Slots current = slots;
+		int index = current.indexOf(id);
+		return index >= 0 ? current.table.getValue(current.handles[index]) : null;
+	}
+
+	/**
+	 * Release the handles in the project table; the values stay readable through this view.
+	 */
+	synchronized void detach() {
+		if (slots.table != null) {
+			moveTo(new FahDataPointTable(DETACHED_CHUNK_SHIFT));
+		}
+	}
+
+	/**
+	 * Move all values to the table of another project.
+	 */
+	synchronized void moveTo(FahDataPointTable newTable) {
+		Slots current = slots;
+		FahDataPointTable oldTable = current.table;
+		if (oldTable == newTable) {
+			return;
+		}
+		int[] newHandles = new int[current.handles.length];
+		for (int i = 0; i < newHandles.length; i++) {
+			newHandles[i] = newTable.allocate(owner, current.ids[i]);
+			newTable.setValue(newHandles[i], oldTable.getValue(current.handles[i]), oldTable.getTimestamp(current.handles[i]));
+		}
+		if (oldTable != null) {
+			oldTable.countReleases(current.handles.length);
+		}
+		slots = new Slots(newTable, current.ids, newHandles);
+		if (oldTable != null) {
+			for (int handle : current.handles) {
+				oldTable.release(handle);
+			}
+		}
+	}
+
+	/**
+	 * @param value <code>null</code> to remove.
+	 * @return Previous value.
+	 */
+	synchronized String setValue(String id, String value) {
+		return setValue(id, value, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param value           <code>null</code> to remove.
+	 * @param timestampMillis When the value was received, see {@link FahDataPointTable#getTimestamp(int)}.
+	 * @return Previous value.
+	 */
+	synchronized String setValue(String id, String value, long timestampMillis) {
+		Slots current = slots;
+		int index = current.indexOf(id);
+		if (index >= 0) {
+			int handle = current.handles[index];
+			if (value != null) {
+				return current.table.setValue(handle, value, timestampMillis);
+			}
+			String oldValue = current.table.getValue(handle);
+			// counted first, so snapshots never see the id gone without a release
+			current.table.countReleases(1);
+			slots = current.without(index);
+			current.table.release(handle);
+			return oldValue;
+		}
+		if (value == null) {
+			return null;
+		}
+		FahDataPointTable table = current.table;
+		if (table == null) {
+			FahProject project = owner.getProject();
+			table = project != null ? project.getDataPointTable() : new FahDataPointTable(DETACHED_CHUNK_SHIFT);
+		}
+		int handle = table.allocate(owner, id);
+		table.setValue(handle, value, timestampMillis);
+		slots = current.with(table, id, handle);
+		return null;
+	}
+
+	private static final class IdSet extends AbstractSet<String> {
+
+		private final String[] ids;
+
+		private IdSet(String[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for (String id : ids) {
+				if (id.equals(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index < ids.length;
+				}
+
+				@Override
+				public String next() {
+					if (index >= ids.length) {
+						throw new NoSuchElementException();
+					}
+					return ids[index++];
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+	}
+
+	private static final class Slots {
+
+		private final FahDataPointTable table;
+		private final String[] ids;
+		private final int[] handles;
+
+		private Slots(FahDataPointTable table, String[] ids, int[] handles) {
+			this.table = table;
+			this.ids = ids;
+			this.handles = handles;
+		}
+
+		private int indexOf(String id) {
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i].equals(id)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private Slots with(FahDataPointTable newTable, String id, int handle) {
+			String[] newIds = Arrays.copyOf(ids, ids.length + 1);
+			int[] newHandles = Arrays.copyOf(handles, handles.length + 1);
+			newIds[ids.length] = id;
+			newHandles[handles.length] = handle;
+			return new Slots(newTable, newIds, newHandles);
+		}
+
+		private Slots without(int index) {
+			String[] newIds = new String[ids.length - 1];
+			int[] newHandles = new int[handles.length - 1];
+			System.arraycopy(ids, 0, newIds, 0, index);
+			System.arraycopy(ids, index + 1, newIds, index, newIds.length - index);
+			System.arraycopy(handles, 0, newHandles, 0, index);
+			System.arraycopy(handles, index + 1, newHandles, index, newHandles.length - index);
+			return new Slots(table, newIds, newHandles);
+		}
+
+	}
+
+}
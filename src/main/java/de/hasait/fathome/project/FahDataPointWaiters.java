@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pending waits for datapoints of one channel to satisfy a predicate; evaluated on each change of the datapoint, timeouts are
+ * handled by the {@link FahTimerWheel}.
+ */
+final class FahDataPointWaiters {
+
+	private static final Logger log = LoggerFactory.getLogger(FahDataPointWaiters.class);
+
+	private final Map<String, Set<Waiter>> waitersByDataPointId = new HashMap<>();
+	private volatile boolean empty = true;
+
+	FahDataPointWaiters() {
+		super();
+	}
+
+	/**
+	 * The current value is tested after the waiter has been registered, so a change in between is not missed.
+	 */
+	CompletableFuture<String> await(AbstractFahChannel channel, String dataPointId, Predicate<String> predicate,
+			long timeoutMillis) {
+		Waiter waiter = new Waiter(dataPointId, predicate);
+		synchronized (this) {
+			waitersByDataPointId.computeIfAbsent(dataPointId, k -> new LinkedHashSet<>()).add(waiter);
+			empty = false;
+		}
+		String message = channel.getName() + "@" + dataPointId + " not reached within " + timeoutMillis + "ms";
+		FahTimerWheel.Timeout timeout = FahTimerWheel.getDefault()
+													 .scheduleAsync(() -> waiter.future.completeExceptionally(new TimeoutException(message)),
+																	timeoutMillis
+													 );
+		waiter.future.whenComplete((value, failure) -> {
+			timeout.cancel();
+			remove(waiter);
+		});
+		changed(waiter, channel.getDataPointValue(dataPointId));
+		return waiter.future;
+	}
+
+	void changed(String dataPointId, String value) {
+		if (empty) {
+			return;
+		}
+		List<Waiter> waiters;
+		synchronized (this) {
+			Set<Waiter> currentWaiters = waitersByDataPointId.get(dataPointId);
+			if (currentWaiters == null) {
+				return;
+			}
+			waiters = new ArrayList<>(currentWaiters);
+		}
+		for (Waiter waiter : waiters) {
+			changed(waiter, value);
+		}
+	}
+
+	private void changed(Waiter waiter, String value) {
+		boolean satisfied;
+		try {
+			satisfied = waiter.predicate.test(value);
+		} catch (RuntimeException e) {
+			log.warn("Predicate failed for " + waiter.dataPointId + "=" + value, e);
+			waiter.future.completeExceptionally(e);
+			return;
+		}
+		if (satisfied) {
+			waiter.future.complete(value);
+		}
+	}
+
+	private synchronized void remove(Waiter waiter) {
+		Set<Waiter> waiters = waitersByDataPointId.get(waiter.dataPointId);
+		if (waiters != null && waiters.remove(waiter) && waiters.isEmpty()) {
+			waitersByDataPointId.remove(waiter.dataPointId);
+			empty = waitersByDataPointId.isEmpty();
+		}
+	}
+
+	private static final class Waiter {
+
+		private final String dataPointId;
+		private final Predicate<String> predicate;
+		private final CompletableFuture<String> future = new CompletableFuture<>();
+
+		private Waiter(String dataPointId, Predicate<String> predicate) {
+			this.dataPointId = dataPointId;
+			this.predicate = predicate;
+		}
+
+	}
+
+}
@@ -17,11 +17,9 @@
 package de.hasait.fathome.project;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
@@ -36,13 +34,13 @@ public class FahDevice extends AbstractFahPart {
 
 	private final String serialNumber;
 
-	private final Map<String, AbstractFahChannel> channelsById = new TreeMap<>();
-	private final Map<String, String> parameterValues = new ConcurrentHashMap<>();
-	private FahString type;
-	private String deviceId;
-	private FahFunction function;
-	private String name;
-	private FahRoom room;
+	private final Map<String, AbstractFahChannel> channelsById = new ConcurrentHashMap<>();
+	private final FahDataPointView parameters = new FahDataPointView(this);
+	private volatile FahString type;
+	private volatile String deviceId;
+	private volatile FahFunction function;
+	private volatile String name;
+	private volatile FahRoom room;
 
 	FahDevice(String serialNumber) {
 		super();
@@ -50,8 +48,32 @@ public class FahDevice extends AbstractFahPart {
 		this.serialNumber = serialNumber;
 	}
 
+	/**
+	 * Listen to all datapoints of all channels of this device.
+	 */
+	public FahListenerRegistration addDataPointListener(FahDataPointListener listener) {
+		return listenerRegistry().addDataPointListener(serialNumber, listener);
+	}
+
+	/**
+	 * Listen to all parameters of this device.
+	 */
+	public FahListenerRegistration addParameterListener(FahParameterListener listener) {
+		return listenerRegistry().addParameterListener(serialNumber, listener);
+	}
+
+	/**
+	 * Listen to a single parameter of this device.
+	 */
+	public FahListenerRegistration addParameterListener(String parameterId, FahParameterListener listener) {
+		return listenerRegistry().addParameterListener(serialNumber, parameterId, listener);
+	}
+
+	/**
+	 * @return Copy sorted by id.
+	 */
 	public Collection<AbstractFahChannel> getAllChannels() {
-		return Collections.unmodifiableCollection(channelsById.values());
+		return FahProject.sortedValues(channelsById);
 	}
 
 	public AbstractFahChannel getChannel(String channelId) {
@@ -71,11 +93,19 @@ public String getName() {
 	}
 
 	public Set<String> getParameterIds() {
-		return Collections.unmodifiableSet(parameterValues.keySet());
+		return parameters.getIds();
+	}
+
+	/**
+	 * @return Handle of the parameter in the {@link FahProject#getDataPointTable() datapoint table} or <code>-1</code> if the
+	 * parameter has no value.
+	 */
+	public int getParameterHandle(String parameterId) {
+		return parameters.getHandle(parameterId);
 	}
 
 	public String getParameterValue(String parameterId) {
-		return parameterValues.get(parameterId);
+		return parameters.getValue(parameterId);
 	}
 
 	public FahRoom getRoom() {
@@ -94,6 +124,19 @@ void addChannel(AbstractFahChannel channel) {
 		channelsById.put(channel.getId(), channel);
 	}
 
+	void detachParameters() {
+		parameters.detach();
+	}
+
+	@Override
+	void projectChanged() {
+		parameters.moveTo(getProject().getDataPointTable());
+	}
+
+	void removeChannel(AbstractFahChannel channel) {
+		channelsById.remove(channel.getId(), channel);
+	}
+
 	void setDeviceId(String deviceId) {
 		this.deviceId = deviceId;
 	}
@@ -107,9 +150,17 @@ void setName(String name) {
 	}
 
 	final void setParameter(String parameterId, String value) {
-		String oldValue = value != null ? parameterValues.put(parameterId, value) : parameterValues.remove(parameterId);
+		setParameter(parameterId, value, System.currentTimeMillis());
+	}
+
+	final void setParameter(String parameterId, String value, long timestampMillis) {
+		String oldValue = parameters.setValue(parameterId, value, timestampMillis);
 		if (!Objects.equals(oldValue, value)) {
 			log.info(name + "@" + parameterId + " changed: " + oldValue + " -> " + value);
+			FahProject project = getProject();
+			if (project != null) {
+				project.getListenerRegistry().fireParameterChanged(this, parameterId, oldValue, value);
+			}
 		}
 	}
 
@@ -121,10 +172,18 @@ void setRoom(FahRoom newRoom) {
 		if (room != null) {
 			room.addDevice(this);
 		}
+		FahProject project = getProject();
+		if (project != null) {
+			project.reindexChannels(this);
+		}
 	}
 
 	void setType(FahString type) {
 		this.type = type;
 	}
 
+	private FahListenerRegistry listenerRegistry() {
+		return requireProject("Device " + serialNumber).getListenerRegistry();
+	}
+
 }
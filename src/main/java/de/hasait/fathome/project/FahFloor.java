@@ -17,8 +17,8 @@
 package de.hasait.fathome.project;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -27,11 +27,11 @@ public class FahFloor extends AbstractFahPart {
 
 	private final int id;
 
-	private final Set<FahRoom> rooms = new HashSet<>();
+	private final Set<FahRoom> rooms = ConcurrentHashMap.newKeySet();
 
-	private String name;
+	private volatile String name;
 
-	private int level;
+	private volatile int level;
 
 	FahFloor(int id) {
 		super();
@@ -39,6 +39,10 @@ public class FahFloor extends AbstractFahPart {
 		this.id = id;
 	}
 
+	public FahAggregates getAggregates() {
+		return getProject().getAggregates(this);
+	}
+
 	public int getLevel() {
 		return level;
 	}
@@ -59,6 +63,10 @@ void addRoom(FahRoom room) {
 		rooms.add(room);
 	}
 
+	void removeRoom(FahRoom room) {
+		rooms.remove(room);
+	}
+
 	void setLevel(int level) {
 		this.level = level;
 	}
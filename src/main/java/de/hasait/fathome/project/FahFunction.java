@@ -16,6 +16,8 @@
 
 package de.hasait.fathome.project;
 
+import java.util.Objects;
+
 /**
  *
  */
@@ -23,8 +25,8 @@ public class FahFunction extends AbstractFahPart {
 
 	private final int id;
 
-	private FahString name;
-	private String fidName;
+	private volatile FahString name;
+	private volatile String fidName;
 
 	FahFunction(int id) {
 		super();
@@ -45,7 +47,14 @@ public FahString getName() {
 	}
 
 	void setFidName(String fidName) {
+		if (Objects.equals(this.fidName, fidName)) {
+			return;
+		}
 		this.fidName = fidName;
+		FahProject project = getProject();
+		if (project != null) {
+			project.reindexChannels(this);
+		}
 	}
 
 	void setName(FahString name) {
@@ -14,18 +14,14 @@
  * limitations under the License.
  */
 
-package de.hasait.fathome.comm.xml.project;
-
-import javax.xml.bind.annotation.XmlAttribute;
+package de.hasait.fathome.project;
 
 /**
- *
+ * Returned when registering a listener, used to unregister it again.
  */
-public class PxRoom {
+@FunctionalInterface
+public interface FahListenerRegistration {
 
-	@XmlAttribute
-	public String uid;
-	@XmlAttribute
-	public String name;
+	void remove();
 
 }
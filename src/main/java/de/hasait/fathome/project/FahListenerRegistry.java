@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listeners for datapoint and parameter changes, indexed by device serial number, channel id and datapoint/parameter id.
+ * <p>
+ * Dispatching a change only visits the listeners registered for that exact path or one of its prefixes, so the cost per change
+ * does not depend on the total number of registered listeners. Listeners are keyed by ids rather than object identity and
+ * therefore stay registered when the project is reloaded. They are called on the thread applying the change.
+ */
+public class FahListenerRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(FahListenerRegistry.class);
+
+	private final List<FahDataPointListener> dataPointListeners = new CopyOnWriteArrayList<>();
+	private final List<FahParameterListener> parameterListeners = new CopyOnWriteArrayList<>();
+	private final Map<String, DeviceListeners> deviceListenersBySerialNumber = new ConcurrentHashMap<>();
+
+	public FahListenerRegistry() {
+		super();
+	}
+
+	/**
+	 * Listen to all datapoints of all channels.
+	 */
+	public FahListenerRegistration addDataPointListener(FahDataPointListener listener) {
+		return add(dataPointListeners, listener);
+	}
+
+	/**
+	 * Listen to all datapoints of all channels of a device.
+	 */
+	public FahListenerRegistration addDataPointListener(String serialNumber, FahDataPointListener listener) {
+		return add(deviceListeners(serialNumber).dataPointListeners, listener);
+	}
+
+	/**
+	 * Listen to all datapoints of a channel.
+	 */
+	public FahListenerRegistration addDataPointListener(String serialNumber, String channelId, FahDataPointListener listener) {
+		return add(deviceListeners(serialNumber).channelListeners(channelId).dataPointListeners, listener);
+	}
+
+	/**
+	 * Listen to a single datapoint of a channel.
+	 */
+	public FahListenerRegistration addDataPointListener(String serialNumber, String channelId, String dataPointId,
+			FahDataPointListener listener) {
+		return add(deviceListeners(serialNumber).channelListeners(channelId).dataPointListeners(dataPointId), listener);
+	}
+
+	/**
+	 * Listen to all parameters of all devices.
+	 */
+	public FahListenerRegistration addParameterListener(FahParameterListener listener) {
+		return add(parameterListeners, listener);
+	}
+
+	/**
+	 * Listen to all parameters of a device.
+	 */
+	public FahListenerRegistration addParameterListener(String serialNumber, FahParameterListener listener) {
+		return add(deviceListeners(serialNumber).parameterListeners, listener);
+	}
+
+	/**
+	 * Listen to a single parameter of a device.
+	 */
+	public FahListenerRegistration addParameterListener(String serialNumber, String parameterId, FahParameterListener listener) {
+		return add(deviceListeners(serialNumber).parameterListeners(parameterId), listener);
+	}
+
+	void fireDataPointChanged(AbstractFahChannel channel, String dataPointId, String oldValue, String newValue) {
+		notifyDataPointListeners(dataPointListeners, channel, dataPointId, oldValue, newValue);
+		DeviceListeners deviceListeners = deviceListenersBySerialNumber.get(channel.getDevice().getSerialNumber());
+		if (deviceListeners == null) {
+			return;
+		}
+		notifyDataPointListeners(deviceListeners.dataPointListeners, channel, dataPointId, oldValue, newValue);
+		ChannelListeners channelListeners = deviceListeners.channelListenersById.get(channel.getId());
+		if (channelListeners == null) {
+			return;
+		}
+		notifyDataPointListeners(channelListeners.dataPointListeners, channel, dataPointId, oldValue, newValue);
+		List<FahDataPointListener> listeners = channelListeners.dataPointListenersById.get(dataPointId);
+		if (listeners != null) {
+			notifyDataPointListeners(listeners, channel, dataPointId, oldValue, newValue);
+		}
+	}
+
+	void fireParameterChanged(FahDevice device, String parameterId, String oldValue, String newValue) {
+		notifyParameterListeners(parameterListeners, device, parameterId, oldValue, newValue);
+		DeviceListeners deviceListeners = deviceListenersBySerialNumber.get(device.getSerialNumber());
+		if (deviceListeners == null) {
+			return;
+		}
+		notifyParameterListeners(deviceListeners.parameterListeners, device, parameterId, oldValue, newValue);
+		List<FahParameterListener> listeners = deviceListeners.parameterListenersById.get(parameterId);
+		if (listeners != null) {
+			notifyParameterListeners(listeners, device, parameterId, oldValue, newValue);
+		}
+	}
+
+	private <L> FahListenerRegistration add(List<L> listeners, L listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener is null");
+		}
+		listeners.add(listener);
+		return () -> listeners.remove(listener);
+	}
+
+	private DeviceListeners deviceListeners(String serialNumber) {
+		return deviceListenersBySerialNumber.computeIfAbsent(serialNumber, k -> new DeviceListeners());
+	}
+
+	private void notifyDataPointListeners(List<FahDataPointListener> listeners, AbstractFahChannel channel, String dataPointId,
+			String oldValue, String newValue) {
+		for (FahDataPointListener listener : listeners) {
+			try {
+				listener.dataPointChanged(channel, dataPointId, oldValue, newValue);
+			} catch (RuntimeException e) {
+				log.warn("Datapoint listener failed", e);
+			}
+		}
+	}
+
+	private void notifyParameterListeners(List<FahParameterListener> listeners, FahDevice device, String parameterId,
+			String oldValue, String newValue) {
+		for (FahParameterListener listener : listeners) {
+			try {
+				listener.parameterChanged(device, parameterId, oldValue, newValue);
+			} catch (RuntimeException e) {
+				log.warn("Parameter listener failed", e);
+			}
+		}
+	}
+
+	private static final class ChannelListeners {
+
+		private final List<FahDataPointListener> dataPointListeners = new CopyOnWriteArrayList<>();
+		private final Map<String, List<FahDataPointListener>> dataPointListenersById = new ConcurrentHashMap<>();
+
+		private List<FahDataPointListener> dataPointListeners(String dataPointId) {
+			return dataPointListenersById.computeIfAbsent(dataPointId, k -> new CopyOnWriteArrayList<>());
+		}
+
+	}
+
+	private static final class DeviceListeners {
+
+		private final List<FahDataPointListener> dataPointListeners = new CopyOnWriteArrayList<>();
+		private final Map<String, ChannelListeners> channelListenersById = new ConcurrentHashMap<>();
+		private final List<FahParameterListener> parameterListeners = new CopyOnWriteArrayList<>();
+		private final Map<String, List<FahParameterListener>> parameterListenersById = new ConcurrentHashMap<>();
+
+		private ChannelListeners channelListeners(String channelId) {
+			return channelListenersById.computeIfAbsent(channelId, k -> new ChannelListeners());
+		}
+
+		private List<FahParameterListener> parameterListeners(String parameterId) {
+			return parameterListenersById.computeIfAbsent(parameterId, k -> new CopyOnWriteArrayList<>());
+		}
+
+	}
+
+}
@@ -14,23 +14,18 @@
  * limitations under the License.
  */
 
-package de.hasait.fathome.comm.xml.project;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.xml.bind.annotation.XmlAttribute;
-import javax.xml.bind.annotation.XmlElement;
+package de.hasait.fathome.project;
 
 /**
  *
  */
-public class PxDataPoint {
-
-	@XmlAttribute
-	public String i;
+@FunctionalInterface
+public interface FahParameterListener {
 
-	@XmlElement(name = "value")
-	public List<String> values = new ArrayList<>();
+	/**
+	 * @param oldValue <code>null</code> if the parameter had no value.
+	 * @param newValue <code>null</code> if the parameter was removed.
+	 */
+	void parameterChanged(FahDevice device, String parameterId, String oldValue, String newValue);
 
 }
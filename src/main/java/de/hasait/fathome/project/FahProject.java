@@ -16,12 +16,15 @@
 
 package de.hasait.fathome.project;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.hasait.fathome.comm.FahCommunication;
 
@@ -31,22 +34,51 @@
 public class FahProject {
 
 	private final FahCommunication communication;
+	private final FahListenerRegistry listenerRegistry;
 
-	private final Set<AbstractFahPart> parts = new HashSet<>();
-	private final Map<String, String> sysap = new TreeMap<>();
-	private final Map<String, String> config = new TreeMap<>();
-	private final Map<Integer, FahString> stringById = new TreeMap<>();
-	private final Map<Integer, FahFunction> functionById = new TreeMap<>();
-	private final Map<Integer, FahFloor> floorById = new TreeMap<>();
-	private final Map<String, FahFloor> floorByName = new TreeMap<>();
-	private final Map<Integer, FahRoom> roomById = new TreeMap<>();
-	private final Map<String, FahDevice> deviceBySerialNumber = new TreeMap<>();
-	private final Map<String, AbstractFahChannel> channelByName = new TreeMap<>();
+	private final FahDataPointTable dataPointTable = new FahDataPointTable();
+	private final FahChannelIndex channelIndex = new FahChannelIndex();
+	private final FahConfirmationTracker confirmationTracker = new FahConfirmationTracker();
+	private final Set<AbstractFahPart> parts = ConcurrentHashMap.newKeySet();
+	private final Map<String, String> sysap = new ConcurrentHashMap<>();
+	private final Map<String, String> config = new ConcurrentHashMap<>();
+	private final Map<Integer, FahString> stringById = new ConcurrentHashMap<>();
+	private final Map<Integer, FahFunction> functionById = new ConcurrentHashMap<>();
+	private final Map<Integer, FahFloor> floorById = new ConcurrentHashMap<>();
+	private final Map<String, FahFloor> floorByName = new ConcurrentHashMap<>();
+	private final Map<Integer, FahRoom> roomById = new ConcurrentHashMap<>();
+	private final Map<String, FahDevice> deviceBySerialNumber = new ConcurrentHashMap<>();
+	private final Map<String, AbstractFahChannel> channelByName = new ConcurrentHashMap<>();
+
+	private volatile String mrhaVersion;
+	private volatile String mrhaBuild;
 
 	public FahProject(FahCommunication communication) {
+		this(communication, new FahListenerRegistry());
+	}
+
+	/**
+	 * @param listenerRegistry Allows sharing listeners across reloads of a project.
+	 */
+	public FahProject(FahCommunication communication, FahListenerRegistry listenerRegistry) {
 		super();
 
 		this.communication = communication;
+		this.listenerRegistry = listenerRegistry;
+	}
+
+	/**
+	 * Listen to all datapoints of all channels.
+	 */
+	public FahListenerRegistration addDataPointListener(FahDataPointListener listener) {
+		return listenerRegistry.addDataPointListener(listener);
+	}
+
+	/**
+	 * Listen to all parameters of all devices.
+	 */
+	public FahListenerRegistration addParameterListener(FahParameterListener listener) {
+		return listenerRegistry.addParameterListener(listener);
 	}
 
 	public void addPart(AbstractFahPart part) {
@@ -85,25 +117,143 @@ public void addPart(AbstractFahPart part) {
 			if (name != null) {
 				channelByName.put(name, fah);
 			}
+			channelIndex.add(fah);
 		}
 	}
 
+	/**
+	 * Apply a freshly loaded project to this one in place: existing strings, functions, floors, rooms, devices and channels are
+	 * updated and keep their identity, new ones are adopted and vanished ones are removed. Datapoint and parameter changes are
+	 * reported to the listeners like regular updates.
+	 *
+	 * @param loadedProject Discarded afterwards, as some of its parts are moved to this project.
+	 */
+	public void reconcile(FahProject loadedProject) {
+		reconcile(loadedProject, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Like {@link #reconcile(FahProject)}, but datapoints and parameters changed after the given sequence number keep their
+	 * value: they were written or reported while the project was being loaded, so the loaded value may predate them.
+	 *
+	 * @param sequence Usually {@link #getSequence()} before the project was requested.
+	 */
+	public void reconcile(FahProject loadedProject, long sequence) {
+		new FahProjectReconciler(this, loadedProject, sequence).reconcile();
+	}
+
+	/**
+	 * Datapoints and parameters changed after the given sequence number, see {@link FahDataPointTable#changesSince(long)}.
+	 */
+	public List<FahDataPointChange> changesSince(long sequence) {
+		return dataPointTable.changesSince(sequence);
+	}
+
+	/**
+	 * @return Aggregates of all channels of devices in rooms of the given floor.
+	 */
+	public FahAggregates getAggregates(FahFloor floor) {
+		return channelIndex.getAggregatesByFloorId(floor.getId());
+	}
+
+	/**
+	 * @return Aggregates of all channels of devices in the given room.
+	 */
+	public FahAggregates getAggregates(FahRoom room) {
+		return channelIndex.getAggregatesByRoomId(room.getId());
+	}
+
+	/**
+	 * @return Copy sorted by name.
+	 */
 	public Collection<AbstractFahChannel> getAllChannels() {
-		return Collections.unmodifiableCollection(channelByName.values());
+		return sortedValues(channelByName);
+	}
+
+	/**
+	 * @return Copy sorted by serial number.
+	 */
+	public Collection<FahDevice> getAllDevices() {
+		return sortedValues(deviceBySerialNumber);
 	}
 
+	/**
+	 * @return Copy sorted by id.
+	 */
 	public Collection<FahFloor> getAllFloors() {
-		return Collections.unmodifiableCollection(floorById.values());
+		return sortedValues(floorById);
 	}
 
 	public AbstractFahChannel getChannel(String name) {
 		return name != null ? channelByName.get(name) : null;
 	}
 
+	/**
+	 * @return Live view of all channels of the given class or its subclasses.
+	 */
+	public <T extends AbstractFahChannel> Collection<T> getChannels(Class<T> type) {
+		return channelIndex.getByClass(type);
+	}
+
+	/**
+	 * @return Live view of all channels whose function has the given FID name, e.g. <code>FID_DimmingActuator</code>.
+	 */
+	public Collection<AbstractFahChannel> getChannelsByFidName(String fidName) {
+		return channelIndex.getByFidName(fidName);
+	}
+
+	/**
+	 * @return Live view of all channels of devices in rooms of the given floor.
+	 */
+	public Collection<AbstractFahChannel> getChannelsByFloor(FahFloor floor) {
+		return channelIndex.getByFloorId(floor.getId());
+	}
+
+	/**
+	 * @return Live view of all channels with the given function.
+	 */
+	public Collection<AbstractFahChannel> getChannelsByFunctionId(int functionId) {
+		return channelIndex.getByFunctionId(functionId);
+	}
+
+	/**
+	 * @return Live view of all channels of devices in the given room.
+	 */
+	public Collection<AbstractFahChannel> getChannelsByRoom(FahRoom room) {
+		return channelIndex.getByRoomId(room.getId());
+	}
+
+	/**
+	 * @return All channels of the given class or its subclasses in the given room.
+	 */
+	public <T extends AbstractFahChannel> List<T> getChannelsByRoom(FahRoom room, Class<T> type) {
+		List<T> channels = new ArrayList<>();
+		for (AbstractFahChannel channel : channelIndex.getByRoomId(room.getId())) {
+			if (type.isInstance(channel)) {
+				channels.add(type.cast(channel));
+			}
+		}
+		return channels;
+	}
+
 	public FahCommunication getCommunication() {
 		return communication;
 	}
 
+	/**
+	 * @return Confirmation tracking of optimistic writes; exposes latency, rejection and timeout counts.
+	 */
+	public FahConfirmationTracker getConfirmationTracker() {
+		return confirmationTracker;
+	}
+
+	/**
+	 * @return Values of all datapoints and parameters.
+	 */
+	public FahDataPointTable getDataPointTable() {
+		return dataPointTable;
+	}
+
 	public FahDevice getDeviceBySerialNumber(String serialNumber) {
 		return serialNumber != null ? deviceBySerialNumber.get(serialNumber) : null;
 	}
@@ -112,6 +262,52 @@ public FahFloor getFloorByName(String name) {
 		return name != null ? floorByName.get(name) : null;
 	}
 
+	public FahListenerRegistry getListenerRegistry() {
+		return listenerRegistry;
+	}
+
+	public String getMrhaBuild() {
+		return mrhaBuild;
+	}
+
+	public String getMrhaVersion() {
+		return mrhaVersion;
+	}
+
+	/**
+	 * @return Sequence number of the last datapoint or parameter change; pass it to {@link #changesSince(long)} next time.
+	 */
+	public long getSequence() {
+		return dataPointTable.getSequence();
+	}
+
+	/**
+	 * @return Consistent, immutable view of all datapoint and parameter values; cheap to take.
+	 */
+	public FahProjectSnapshot snapshot() {
+		return new FahProjectSnapshot(dataPointTable);
+	}
+
+	Collection<FahFunction> getAllFunctions() {
+		return sortedValues(functionById);
+	}
+
+	Collection<FahString> getAllStrings() {
+		return sortedValues(stringById);
+	}
+
+	Map<String, String> getFahConfigValues() {
+		return Collections.unmodifiableMap(new TreeMap<>(config));
+	}
+
+	Map<String, String> getFahSysapValues() {
+		return Collections.unmodifiableMap(new TreeMap<>(sysap));
+	}
+
+	FahFloor getFloorById(Integer id) {
+		return id != null ? floorById.get(id) : null;
+	}
+
 	FahFunction getFunctionById(Integer id) {
 		return id != null ? functionById.get(id) : null;
 	}
@@ -124,12 +320,127 @@ FahString getStringById(Integer id) {
 		return id != null ? stringById.get(id) : null;
 	}
 
+	void removePart(AbstractFahPart part) {
+		if (part instanceof FahString) {
+			FahString fah = (FahString) part;
+			stringById.remove(fah.getId(), fah);
+		}
+		if (part instanceof FahFunction) {
+			FahFunction fah = (FahFunction) part;
+			functionById.remove(fah.getId(), fah);
+		}
+		if (part instanceof FahFloor) {
+			FahFloor fah = (FahFloor) part;
+			floorById.remove(fah.getId(), fah);
+			String name = fah.getName();
+			if (name != null) {
+				floorByName.remove(name, fah);
+			}
+		}
+		if (part instanceof FahRoom) {
+			FahRoom fah = (FahRoom) part;
+			roomById.remove(fah.getId(), fah);
+		}
+		if (part instanceof FahDevice) {
+			FahDevice fah = (FahDevice) part;
+			deviceBySerialNumber.remove(fah.getSerialNumber(), fah);
+			fah.detachParameters();
+		}
+		if (part instanceof AbstractFahChannel) {
+			AbstractFahChannel fah = (AbstractFahChannel) part;
+			String name = fah.getName();
+			if (name != null) {
+				channelByName.remove(name, fah);
+			}
+			channelIndex.remove(fah);
+			fah.detachDataPoints();
+		}
+	}
+
+	void reindexChannel(AbstractFahChannel channel) {
+		channelIndex.update(channel);
+	}
+
+	void reindexChannels(FahDevice device) {
+		device.getAllChannels().forEach(channelIndex::update);
+	}
+
+	void reindexChannels(FahFunction function) {
+		channelIndex.updateFunction(function);
+	}
+
+	void reindexChannels(FahRoom room) {
+		room.getDevices().forEach(this::reindexChannels);
+	}
+
+	void renameChannel(AbstractFahChannel channel, String name) {
+		String oldName = channel.getName();
+		if (Objects.equals(oldName, name)) {
+			return;
+		}
+		if (oldName != null) {
+			channelByName.remove(oldName, channel);
+		}
+		channel.setName(name);
+		if (name != null) {
+			channelByName.put(name, channel);
+		}
+	}
+
+	void renameFloor(FahFloor floor, String name) {
+		String oldName = floor.getName();
+		if (Objects.equals(oldName, name)) {
+			return;
+		}
+		if (oldName != null) {
+			floorByName.remove(oldName, floor);
+		}
+		floor.setName(name);
+		if (name != null) {
+			floorByName.put(name, floor);
+		}
+	}
+
 	void setFahConfigValue(String name, String value) {
-		config.put(name, value);
+		if (value != null) {
+			config.put(name, value);
+		} else {
+			config.remove(name);
+		}
 	}
 
 	void setFahSysapValue(String name, String value) {
-		sysap.put(name, value);
+		if (value != null) {
+			sysap.put(name, value);
+		} else {
+			sysap.remove(name);
+		}
+	}
+
+	void setMrhaBuild(String mrhaBuild) {
+		this.mrhaBuild = mrhaBuild;
+	}
+
+	void setMrhaVersion(String mrhaVersion) {
+		this.mrhaVersion = mrhaVersion;
+	}
+
+	void fireAggregatesChanged() {
+		channelIndex.fireAggregatesChanged();
+	}
+
+	/**
+	 * Called with the channel locked; the caller has to {@link #fireAggregatesChanged()} once the lock is released.
+	 */
+	void updateAggregates(AbstractFahChannel channel) {
+		channelIndex.updateContribution(channel);
+	}
+
+	/**
+	 * Lookups use hash maps, so iteration sorts on read.
+	 */
+	static <K extends Comparable<K>, V> Collection<V> sortedValues(Map<K, V> map) {
+		return Collections.unmodifiableCollection(new TreeMap<>(map).values());
 	}
 
 }
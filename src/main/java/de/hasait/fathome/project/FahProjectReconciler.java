@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Applies a freshly loaded project to the live project, see {@link FahProject#reconcile(FahProject)}.
+ * <p>
+ * Parts are matched by their ids (serial number for devices, channel id within a device). A channel is only kept if the new
+ * one has the same class and function, otherwise it is replaced. New parts are moved over from the loaded project instead of
+ * being recreated, so they keep the type chosen by the channel factory and device processors.
+ * <p>
+ * Values changed after the given sequence number and datapoints with a pending confirmation keep their live value.
+ */
+final class FahProjectReconciler {
+
+	private final FahProject target;
+	private final FahProject source;
+	private final long sequence;
+
+	FahProjectReconciler(FahProject target, FahProject source, long sequence) {
+		super();
+
+		this.target = target;
+		this.source = source;
+		this.sequence = sequence;
+	}
+
+	void reconcile() {
+		target.setMrhaVersion(source.getMrhaVersion());
+		target.setMrhaBuild(source.getMrhaBuild());
+		reconcileValues(target.getFahSysapValues(), source.getFahSysapValues(), true);
+		reconcileValues(target.getFahConfigValues(), source.getFahConfigValues(), false);
+
+		List<FahString> strings = new ArrayList<>(source.getAllStrings());
+		strings.forEach(this::reconcileString);
+		List<FahFunction> functions = new ArrayList<>(source.getAllFunctions());
+		functions.forEach(this::reconcileFunction);
+		List<FahFloor> floors = new ArrayList<>(source.getAllFloors());
+		List<FahRoom> rooms = new ArrayList<>();
+		floors.forEach(floor -> rooms.addAll(floor.getRooms()));
+		floors.forEach(this::reconcileFloor);
+		rooms.forEach(this::reconcileRoom);
+		List<FahDevice> devices = new ArrayList<>(source.getAllDevices());
+		devices.forEach(this::reconcileDevice);
+
+		removeVanishedParts(strings, functions, floors, rooms, devices);
+	}
+
+	private void adoptChannel(FahDevice targetDevice, AbstractFahChannel channel) {
+		channel.moveToDevice(targetDevice);
+		channel.setFunction(targetFunction(channel.getFunction()));
+		target.addPart(channel);
+	}
+
+	private void reconcileChannel(FahDevice targetDevice, AbstractFahChannel channel) {
+		AbstractFahChannel targetChannel = targetDevice.getChannel(channel.getId());
+		if (targetChannel != null && (targetChannel.getClass() != channel.getClass() || !Objects
+				.equals(idOf(targetChannel.getFunction()), idOf(channel.getFunction())))) {
+			removeChannel(targetDevice, targetChannel);
+			targetChannel = null;
+		}
+		if (targetChannel == null) {
+			adoptChannel(targetDevice, channel);
+			return;
+		}
+
+		target.renameChannel(targetChannel, channel.getName());
+		Set<String> dataPointIds = channel.getDataPointIds();
+		for (String dataPointId : dataPointIds) {
+			if (isLoadedValueCurrent(targetChannel, dataPointId)) {
+				targetChannel.setDataPoint(dataPointId, channel.getDataPointValue(dataPointId));
+			}
+		}
+		for (String dataPointId : new ArrayList<>(targetChannel.getDataPointIds())) {
+			if (!dataPointIds.contains(dataPointId) && isLoadedValueCurrent(targetChannel, dataPointId)) {
+				targetChannel.setDataPoint(dataPointId, null);
+			}
+		}
+	}
+
+	private void reconcileDevice(FahDevice device) {
+		FahDevice targetDevice = target.getDeviceBySerialNumber(device.getSerialNumber());
+		if (targetDevice == null) {
+			List<AbstractFahChannel> channels = new ArrayList<>(device.getAllChannels());
+			device.setType(target.getStringById(idOf(device.getType())));
+			device.setFunction(targetFunction(device.getFunction()));
+			device.setRoom(targetRoom(device.getRoom()));
+			target.addPart(device);
+			for (AbstractFahChannel channel : channels) {
+				adoptChannel(device, channel);
+			}
+			return;
+		}
+
+		targetDevice.setDeviceId(device.getDeviceId());
+		targetDevice.setType(target.getStringById(idOf(device.getType())));
+		targetDevice.setFunction(targetFunction(device.getFunction()));
+		targetDevice.setName(device.getName());
+		FahRoom targetRoom = targetRoom(device.getRoom());
+		if (targetDevice.getRoom() != targetRoom) {
+			targetDevice.setRoom(targetRoom);
+		}
+		Set<String> parameterIds = device.getParameterIds();
+		for (String parameterId : parameterIds) {
+			if (!isChangedSince(targetDevice.getParameterHandle(parameterId))) {
+				targetDevice.setParameter(parameterId, device.getParameterValue(parameterId));
+			}
+		}
+		for (String parameterId : new ArrayList<>(targetDevice.getParameterIds())) {
+			if (!parameterIds.contains(parameterId) && !isChangedSince(targetDevice.getParameterHandle(parameterId))) {
+				targetDevice.setParameter(parameterId, null);
+			}
+		}
+
+		List<AbstractFahChannel> channels = new ArrayList<>(device.getAllChannels());
+		Set<String> channelIds = new HashSet<>();
+		for (AbstractFahChannel channel : channels) {
+			channelIds.add(channel.getId());
+			reconcileChannel(targetDevice, channel);
+		}
+		for (AbstractFahChannel targetChannel : new ArrayList<>(targetDevice.getAllChannels())) {
+			if (!channelIds.contains(targetChannel.getId())) {
+				removeChannel(targetDevice, targetChannel);
+			}
+		}
+	}
+
+	private void reconcileFloor(FahFloor floor) {
+		FahFloor targetFloor = target.getFloorById(floor.getId());
+		if (targetFloor == null) {
+			// rooms are adopted separately
+			new ArrayList<>(floor.getRooms()).forEach(floor::removeRoom);
+			target.addPart(floor);
+			return;
+		}
+		target.renameFloor(targetFloor, floor.getName());
+		targetFloor.setLevel(floor.getLevel());
+	}
+
+	private void reconcileFunction(FahFunction function) {
+		FahFunction targetFunction = target.getFunctionById(function.getId());
+		FahString targetName = target.getStringById(idOf(function.getName()));
+		if (targetFunction == null) {
+			function.setName(targetName);
+			target.addPart(function);
+			return;
+		}
+		targetFunction.setFidName(function.getFidName());
+		targetFunction.setName(targetName);
+	}
+
+	private void reconcileRoom(FahRoom room) {
+		FahFloor targetFloor = target.getFloorById(room.getFloor().getId());
+		FahRoom targetRoom = target.getRoomById(room.getId());
+		if (targetRoom == null) {
+			// devices are adopted separately and join the room again via setRoom
+			new ArrayList<>(room.getDevices()).forEach(room::removeDevice);
+			room.moveToFloor(targetFloor);
+			target.addPart(room);
+			return;
+		}
+		if (targetRoom.getFloor() != targetFloor) {
+			targetRoom.moveToFloor(targetFloor);
+		}
+		targetRoom.setName(room.getName());
+	}
+
+	private void reconcileString(FahString string) {
+		FahString targetString = target.getStringById(string.getId());
+		if (targetString == null) {
+			target.addPart(string);
+			return;
+		}
+		targetString.setValue(string.getValue());
+	}
+
+	private boolean isChangedSince(int handle) {
+		return handle >= 0 && target.getDataPointTable().getSequence(handle) > sequence;
+	}
+
+	/**
+	 * @return <code>false</code> if the live value is newer than the loaded one or awaits the confirmation of a command.
+	 */
+	private boolean isLoadedValueCurrent(AbstractFahChannel targetChannel, String dataPointId) {
+		return !isChangedSince(targetChannel.getDataPointHandle(dataPointId)) && !targetChannel.hasPendingConfirmation(dataPointId);
+	}
+
+	private void reconcileValues(Map<String, String> targetValues, Map<String, String> sourceValues, boolean sysap) {
+		for (String name : new ArrayList<>(targetValues.keySet())) {
+			if (!sourceValues.containsKey(name)) {
+				setValue(name, null, sysap);
+			}
+		}
+		sourceValues.forEach((name, value) -> setValue(name, value, sysap));
+	}
+
+	private void removeChannel(FahDevice targetDevice, AbstractFahChannel targetChannel) {
+		targetDevice.removeChannel(targetChannel);
+		target.removePart(targetChannel);
+	}
+
+	private void removeVanishedParts(List<FahString> strings, List<FahFunction> functions, List<FahFloor> floors,
+			List<FahRoom> rooms, List<FahDevice> devices) {
+		Set<String> serialNumbers = new HashSet<>();
+		devices.forEach(device -> serialNumbers.add(device.getSerialNumber()));
+		for (FahDevice targetDevice : new ArrayList<>(target.getAllDevices())) {
+			if (!serialNumbers.contains(targetDevice.getSerialNumber())) {
+				targetDevice.setRoom(null);
+				new ArrayList<>(targetDevice.getAllChannels()).forEach(target::removePart);
+				target.removePart(targetDevice);
+			}
+		}
+
+		Set<Integer> roomIds = new HashSet<>();
+		rooms.forEach(room -> roomIds.add(room.getId()));
+		Set<Integer> floorIds = new HashSet<>();
+		floors.forEach(floor -> floorIds.add(floor.getId()));
+		for (FahFloor targetFloor : new ArrayList<>(target.getAllFloors())) {
+			for (FahRoom targetRoom : new ArrayList<>(targetFloor.getRooms())) {
+				if (!roomIds.contains(targetRoom.getId())) {
+					new ArrayList<>(targetRoom.getDevices()).forEach(device -> device.setRoom(null));
+					targetFloor.removeRoom(targetRoom);
+					target.removePart(targetRoom);
+				}
+			}
+			if (!floorIds.contains(targetFloor.getId())) {
+				target.removePart(targetFloor);
+			}
+		}
+
+		Set<Integer> functionIds = new HashSet<>();
+		functions.forEach(function -> functionIds.add(function.getId()));
+		for (FahFunction targetFunction : new ArrayList<>(target.getAllFunctions())) {
+			if (!functionIds.contains(targetFunction.getId())) {
+				target.removePart(targetFunction);
+			}
+		}
+
+		Set<Integer> stringIds = new HashSet<>();
+		strings.forEach(string -> stringIds.add(string.getId()));
+		for (FahString targetString : new ArrayList<>(target.getAllStrings())) {
+			if (!stringIds.contains(targetString.getId())) {
+				target.removePart(targetString);
+			}
+		}
+	}
+
+	private void setValue(String name, String value, boolean sysap) {
+		if (sysap) {
+			target.setFahSysapValue(name, value);
+		} else {
+			target.setFahConfigValue(name, value);
+		}
+	}
+
+	private FahFunction targetFunction(FahFunction function) {
+		return target.getFunctionById(idOf(function));
+	}
+
+	private FahRoom targetRoom(FahRoom room) {
+		return target.getRoomById(idOf(room));
+	}
+
+	private static Integer idOf(FahFunction function) {
+		return function != null ? function.getId() : null;
+	}
+
+	private static Integer idOf(FahRoom room) {
+		return room != null ? room.getId() : null;
+	}
+
+	private static Integer idOf(FahString string) {
+		return string != null ? string.getId() : null;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.List;
+
+/**
+ * Immutable point-in-time view of all datapoint and parameter values of a {@link FahProject}.
+ * <p>
+ * Taking a snapshot is cheap, as it shares its storage with the live project until values change. Typed fields of channels,
+ * e.g. {@link de.hasait.fathome.things.FahSwitch#isOn()}, always reflect the live state; evaluate raw values here instead.
+ */
+public final class FahProjectSnapshot {
+
+	private final FahDataPointTable liveTable;
+	private final FahDataPointTable table;
+	private final long timestamp;
+
+	FahProjectSnapshot(FahDataPointTable liveTable) {
+		super();
+
+		this.liveTable = liveTable;
+		this.table = liveTable.snapshot();
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Values changed after the given sequence number up to this snapshot.
+	 */
+	public List<FahDataPointChange> changesSince(long sequence) {
+		return table.changesSince(sequence);
+	}
+
+	/**
+	 * @return Read-only table of all values, addressed by the same handles as the live table.
+	 */
+	public FahDataPointTable getDataPointTable() {
+		return table;
+	}
+
+	/**
+	 * @return Value at the time of the snapshot; <code>null</code> if the datapoint had no value then.
+	 */
+	public String getDataPointValue(AbstractFahChannel channel, String dataPointId) {
+		return getValue(channel, dataPointId, channel.getDataPointHandle(dataPointId));
+	}
+
+	/**
+	 * @return Value at the time of the snapshot; <code>null</code> if the parameter had no value then.
+	 */
+	public String getParameterValue(FahDevice device, String parameterId) {
+		return getValue(device, parameterId, device.getParameterHandle(parameterId));
+	}
+
+	/**
+	 * @return Sequence number of the last change included in this snapshot.
+	 */
+	public long getSequence() {
+		return table.getSequence();
+	}
+
+	/**
+	 * @return Time the snapshot was taken, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	private String getValue(AbstractFahPart owner, String id, int liveHandle) {
+		if (liveHandle < 0 && liveTable.getReleaseCount() == table.getReleaseCount()) {
+			// nothing was removed since the snapshot, so there was no value then either
+			return null;
+		}
+		// the live handle is usually unchanged; it differs only if the value was added, removed or moved since
+		int handle = table.findHandle(owner, id, liveHandle);
+		return handle >= 0 ? table.getValue(handle) : null;
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+/**
+ * Applies updates to a {@link FahProject}; changes for unknown devices or channels are ignored.
+ */
+public class FahProjectUpdateHandler implements FahUpdateHandler {
+
+	private final FahProject project;
+
+	public FahProjectUpdateHandler(FahProject project) {
+		super();
+
+		this.project = project;
+	}
+
+	@Override
+	public void dataPoint(String serialNumber, String channelId, String dataPointId, String value, long receivedMillis) {
+		FahDevice device = project.getDeviceBySerialNumber(serialNumber);
+		AbstractFahChannel channel = device != null ? device.getChannel(channelId) : null;
+		if (channel != null) {
+			channel.setReportedDataPoint(dataPointId, value, receivedMillis);
+		}
+	}
+
+	@Override
+	public void parameter(String serialNumber, String parameterId, String value, long receivedMillis) {
+		FahDevice device = project.getDeviceBySerialNumber(serialNumber);
+		if (device != null) {
+			device.setParameter(parameterId, value, receivedMillis);
+		}
+	}
+
+	@Override
+	public void sysapValue(String name, String value) {
+		project.setFahSysapValue(name, value);
+	}
+
+}
@@ -17,20 +17,20 @@
 package de.hasait.fathome.project;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
  */
 public class FahRoom extends AbstractFahPart {
 
-	private final FahFloor floor;
 	private final int id;
+	private volatile FahFloor floor;
 
-	private final Set<FahDevice> devices = new HashSet<>();
+	private final Set<FahDevice> devices = ConcurrentHashMap.newKeySet();
 
-	private String name;
+	private volatile String name;
 
 	FahRoom(FahFloor floor, int id) {
 		super();
@@ -41,6 +41,10 @@ public class FahRoom extends AbstractFahPart {
 		floor.addRoom(this);
 	}
 
+	public FahAggregates getAggregates() {
+		return getProject().getAggregates(this);
+	}
+
 	public Set<FahDevice> getDevices() {
 		return Collections.unmodifiableSet(devices);
 	}
@@ -61,6 +65,19 @@ void addDevice(FahDevice device) {
 		devices.add(device);
 	}
 
+	/**
+	 * Used when reconciling a reloaded project: the room is adopted by the floor of the live project.
+	 */
+	void moveToFloor(FahFloor newFloor) {
+		floor.removeRoom(this);
+		floor = newFloor;
+		newFloor.addRoom(this);
+		FahProject project = getProject();
+		if (project != null) {
+			project.reindexChannels(this);
+		}
+	}
+
 	void removeDevice(FahDevice device) {
 		devices.remove(device);
 	}
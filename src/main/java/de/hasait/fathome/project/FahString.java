@@ -22,7 +22,7 @@
 public class FahString extends AbstractFahPart {
 
 	private final int id;
-	private String value;
+	private volatile String value;
 
 	FahString(int id) {
 		super();
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for large numbers of timeouts that rarely fire: scheduling and cancelling are O(1) and do not contend on a
+ * lock, and a single thread advances the wheel tick by tick.
+ * <p>
+ * Timeouts fire up to one tick late. Tasks run on the timer thread and must be short; tasks that call listeners or complete
+ * futures, and therefore run code of the caller, are scheduled with {@link #scheduleAsync(Runnable, long)}.
+ */
+final class FahTimerWheel {
+
+	private static final Logger log = LoggerFactory.getLogger(FahTimerWheel.class);
+
+	private static final long DEFAULT_TICK_MILLIS = 10;
+	private static final int DEFAULT_WHEEL_SIZE = 512;
+
+	static FahTimerWheel getDefault() {
+		return DefaultHolder.timerWheel;
+	}
+
+	private final String name;
+	private final long tickNanos;
+	private final List<Queue<Timeout>> wheel;
+	private final int mask;
+	private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private long startNanos;
+	private long tick;
+
+	/**
+	 * @param wheelSize Number of buckets, rounded up to a power of two.
+	 */
+	FahTimerWheel(String name, long tickMillis, int wheelSize) {
+		super();
+
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("tickMillis < 1: " + tickMillis);
+		}
+		if (wheelSize < 1 || wheelSize > 1 << 30) {
+			throw new IllegalArgumentException("wheelSize not in range [1, 2^30]: " + wheelSize);
+		}
+
+		this.name = name;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.wheel = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			wheel.add(new ArrayDeque<>());
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Run the task after the delay, unless the returned timeout is cancelled before.
+	 */
+	Timeout schedule(Runnable task, long delayMillis) {
+		Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+		scheduledTimeouts.add(timeout);
+		if (!started.get() && started.compareAndSet(false, true)) {
+			startNanos = System.nanoTime();
+			Thread thread = new Thread(this::run, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return timeout;
+	}
+
+	/**
+	 * Like {@link #schedule(Runnable, long)}, but the task runs on the {@link ForkJoinPool#commonPool() common pool}, so it
+	 * cannot delay other timeouts.
+	 */
+	Timeout scheduleAsync(Runnable task, long delayMillis) {
+		return schedule(() -> ForkJoinPool.commonPool().execute(task), delayMillis);
+	}
+
+	private void expire(Queue<Timeout> bucket) {
+		Iterator<Timeout> iterator = bucket.iterator();
+		while (iterator.hasNext()) {
+			Timeout timeout = iterator.next();
+			if (timeout.cancelled) {
+				iterator.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				iterator.remove();
+				try {
+					timeout.task.run();
+				} catch (RuntimeException e) {
+					log.warn("Timeout task failed", e);
+				}
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+	private void run() {
+		while (true) {
+			long deadlineNanos = startNanos + (tick + 1) * tickNanos;
+			long sleepNanos;
+			while ((sleepNanos = deadlineNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, sleepNanos);
+			}
+			transferScheduledTimeouts();
+			expire(wheel.get((int) (tick & mask)));
+			tick++;
+		}
+	}
+
+	private void transferScheduledTimeouts() {
+		Timeout timeout;
+		while ((timeout = scheduledTimeouts.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long deadlineTick = Math.max(tick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1);
+			timeout.remainingRounds = (deadlineTick - tick) / wheel.size();
+			wheel.get((int) (deadlineTick & mask)).add(timeout);
+		}
+	}
+
+	static final class Timeout {
+
+		private final Runnable task;
+		private final long deadlineNanos;
+		private long remainingRounds;
+		private volatile boolean cancelled;
+
+		private Timeout(Runnable task, long deadlineNanos) {
+			this.task = task;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+
+	}
+
+	private static final class DefaultHolder {
+
+		private static final FahTimerWheel timerWheel = new FahTimerWheel("fah-timer", DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+
+	}
+
+}
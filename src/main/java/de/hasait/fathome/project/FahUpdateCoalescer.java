@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers updates keyed by datapoint, parameter or sysap value path and keeps only the latest value per path until
+ * {@link #flush(FahUpdateHandler)} is called.
+ * <p>
+ * Paths are replayed in the order they were first seen, so the order of distinct datapoints is preserved. Superseded
+ * intermediate values are not replayed but counted; the latest value is replayed with its own receive time. Not thread-safe: buffering and flushing must happen on the same thread.
+ */
+public class FahUpdateCoalescer implements FahUpdateHandler {
+
+	private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+
+	private final LongAdder receivedCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+
+	public FahUpdateCoalescer() {
+		super();
+	}
+
+	@Override
+	public void dataPoint(String serialNumber, String channelId, String dataPointId, String value, long receivedMillis) {
+		String key = "d:" + serialNumber + "/" + channelId + "/" + dataPointId;
+		buffer(key, PendingUpdate.DATA_POINT, serialNumber, channelId, dataPointId, value, receivedMillis);
+	}
+
+	/**
+	 * Replay the latest value of every buffered path and clear the buffer.
+	 */
+	public void flush(FahUpdateHandler target) {
+		try {
+			for (PendingUpdate pendingUpdate : pendingUpdates.values()) {
+				pendingUpdate.replay(target);
+			}
+		} finally {
+			pendingUpdates.clear();
+		}
+	}
+
+	/**
+	 * @return Number of values that were superseded before being applied.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	/**
+	 * @return Number of paths currently buffered.
+	 */
+	public int getPendingCount() {
+		return pendingUpdates.size();
+	}
+
+	/**
+	 * @return Number of values received, including superseded ones.
+	 */
+	public long getReceivedCount() {
+		return receivedCount.sum();
+	}
+
+	@Override
+	public void parameter(String serialNumber, String parameterId, String value, long receivedMillis) {
+		String key = "p:" + serialNumber + "/" + parameterId;
+		buffer(key, PendingUpdate.PARAMETER, serialNumber, null, parameterId, value, receivedMillis);
+	}
+
+	@Override
+	public void sysapValue(String name, String value) {
+		String key = "s:" + name;
+		buffer(key, PendingUpdate.SYSAP_VALUE, null, null, name, value, 0L);
+	}
+
+	private void buffer(String key, int kind, String serialNumber, String channelId, String id, String value,
+			long receivedMillis) {
+		receivedCount.increment();
+		PendingUpdate existing = pendingUpdates.get(key);
+		if (existing != null) {
+			// keep position of first occurrence, only replace the value
+			existing.value = value;
+			existing.receivedMillis = receivedMillis;
+			coalescedCount.increment();
+		} else {
+			pendingUpdates.put(key, new PendingUpdate(kind, serialNumber, channelId, id, value, receivedMillis));
+		}
+	}
+
+	private static final class PendingUpdate {
+
+		private static final int DATA_POINT = 0;
+		private static final int PARAMETER = 1;
+		private static final int SYSAP_VALUE = 2;
+
+		private final int kind;
+		private final String serialNumber;
+		private final String channelId;
+		private final String id;
+		private String value;
+		private long receivedMillis;
+
+		private PendingUpdate(int kind, String serialNumber, String channelId, String id, String value, long receivedMillis) {
+			this.kind = kind;
+			this.serialNumber = serialNumber;
+			this.channelId = channelId;
+			this.id = id;
+			this.value = value;
+			this.receivedMillis = receivedMillis;
+		}
+
+		private void replay(FahUpdateHandler target) {
+			switch (kind) {
+				case DATA_POINT:
+					target.dataPoint(serialNumber, channelId, id, value, receivedMillis);
+					break;
+				case PARAMETER:
+					target.parameter(serialNumber, id, value, receivedMillis);
+					break;
+				default:
+					target.sysapValue(id, value);
+					break;
+			}
+		}
+
+	}
+
+}
@@ -14,30 +14,19 @@
  * limitations under the License.
  */
 
-package de.hasait.fathome.comm.xml.project;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.xml.bind.annotation.XmlAttribute;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlElementWrapper;
+package de.hasait.fathome.project;
 
 /**
- *
+ * Receiver of the individual changes contained in an update pushed by the SysAP.
+ * <p>
+ * <code>receivedMillis</code> is the time the update arrived from the SysAP, before any queueing or coalescing.
  */
-public class PxParameter {
+public interface FahUpdateHandler {
 
-	@XmlAttribute
-	public String i;
-	@XmlAttribute
-	public String nameId;
+	void dataPoint(String serialNumber, String channelId, String dataPointId, String value, long receivedMillis);
 
-	@XmlElement(name = "value")
-	public String value;
+	void parameter(String serialNumber, String parameterId, String value, long receivedMillis);
 
-	@XmlElementWrapper(name = "valueEnum")
-	@XmlElement(name = "option")
-	public List<PxOption> valueEnum = new ArrayList<>();
+	void sysapValue(String name, String value);
 
 }
@@ -16,20 +16,19 @@
 
 package de.hasait.fathome.project;
 
+import java.io.Reader;
 import java.io.StringReader;
-import java.util.List;
-import java.util.stream.Stream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import javax.xml.bind.JAXB;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.hasait.fathome.comm.xml.project.PxKeyValue;
-import de.hasait.fathome.comm.xml.project.PxProject;
-import de.hasait.fathome.comm.xml.update.UxProject;
-import de.hasait.fathome.things.FahSensor;
-
 /**
  *
  */
@@ -37,94 +36,400 @@ public class FahXmlProcessor {
 
 	private static final Logger log = LoggerFactory.getLogger(FahXmlProcessor.class);
 
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
 	public static void processProjectXml(String xml, FahProject fahProject, FahChannelFactory channelFactory,
 			FahDeviceProcessor deviceProcessor) {
-		PxProject xProject = JAXB.unmarshal(new StringReader(xml), PxProject.class);
-		xProject.sysapValues.forEach(xSysapValue -> fahProject.setFahSysapValue(xSysapValue.name, xSysapValue.value));
-		xProject.configValues.forEach(xConfigValue -> fahProject.setFahConfigValue(xConfigValue.name, xConfigValue.value));
-		xProject.strings.forEach(xString -> {
-			FahString fahString = new FahString(parseId(xString.nameId));
-			fahString.setValue(xString.value);
-			fahProject.addPart(fahString);
-		});
-		xProject.fahDefinitions.functions.forEach(xFunction -> {
-			FahFunction fahFunction = new FahFunction(parseId(xFunction.functionId));
-			fahFunction.setFidName(xFunction.name);
-			fahFunction.setName(fahProject.getStringById(parseId(xFunction.nameId)));
-			fahProject.addPart(fahFunction);
-		});
-		xProject.floors.forEach(xFloor -> {
-			FahFloor fahFloor = new FahFloor(parseId(xFloor.uid));
-			fahFloor.setName(xFloor.name);
-			fahFloor.setLevel(xFloor.level);
-			xFloor.rooms.forEach(xRoom -> {
-				FahRoom fahRoom = new FahRoom(fahFloor, parseId(xRoom.uid));
-				fahRoom.setName(xRoom.name);
-				fahProject.addPart(fahRoom);
-			});
-			fahProject.addPart(fahFloor);
-		});
-		xProject.devices.forEach(xDevice -> {
-			FahDevice fahDevice = new FahDevice(xDevice.serialNumber);
-			fahDevice.setDeviceId(xDevice.deviceId);
-			fahDevice.setType(fahProject.getStringById(parseId(xDevice.nameId)));
-			fahDevice.setFunction(fahProject.getFunctionById(parseId(xDevice.functionId)));
-			fahDevice.setName(findKV(xDevice.attributes, "displayName"));
-			Integer roomUid = parseId(findKV(xDevice.attributes, "room"));
-			fahDevice.setRoom(fahProject.getRoomById(roomUid));
-			xDevice.channels.forEach(xChannel -> {
-				Integer functionId = parseId(findKV(xChannel.attributes, "functionId"));
-				FahFunction function = fahProject.getFunctionById(functionId);
-				AbstractFahChannel fahChannel = channelFactory.createChannel(fahDevice, xChannel.i, function);
-				fahChannel.setName(findKV(xChannel.attributes, "displayName"));
-				Stream.concat(xChannel.inputs.stream(), xChannel.outputs.stream()).forEach(pxDataPoint -> {
-					String value = pxDataPoint.values.stream().findFirst().orElse(null);
-					fahChannel.setDataPoint(pxDataPoint.i, value);
-				});
-				fahProject.addPart(fahChannel);
-			});
-			xDevice.parameters.forEach(xParameter -> {
-				fahDevice.setParameter(xParameter.i, xParameter.value);
-			});
-			fahProject.addPart(fahDevice);
-			deviceProcessor.processDevice(fahDevice);
-		});
+		processProjectXml(new StringReader(xml), fahProject, channelFactory, deviceProcessor);
+	}
+
+	public static void processProjectXml(Reader xmlReader, FahProject fahProject, FahChannelFactory channelFactory,
+			FahDeviceProcessor deviceProcessor) {
+		try {
+			XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(xmlReader);
+			try {
+				if (nextChildElement(reader)) {
+					processProjectProject(reader, fahProject, channelFactory, deviceProcessor);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	public static void processUpdateXml(String xml, FahProject fahProject) {
+		processUpdateXml(xml, new FahProjectUpdateHandler(fahProject));
+	}
+
+	public static void processUpdateXml(String xml, FahUpdateHandler updateHandler) {
+		processUpdateXml(xml, updateHandler, System.currentTimeMillis());
+	}
+
+	/**
+	 * Parse an update and pass every contained sysap value, datapoint and parameter to the handler in document order.
+	 *
+	 * @param receivedMillis When the update was received, passed on to the handler.
+	 */
+	public static void processUpdateXml(String xml, FahUpdateHandler updateHandler, long receivedMillis) {
 		log.info("Update-XML: " + xml);
 
-		UxProject xProject = JAXB.unmarshal(new StringReader(xml), UxProject.class);
-		xProject.sysapValues.forEach(xSysapValue -> {
-			fahProject.setFahSysapValue(xSysapValue.name, xSysapValue.value);
-		});
-		xProject.devices.forEach(xDevice -> {
-			FahDevice fahDevice = fahProject.getDeviceBySerialNumber(xDevice.serialNumber);
-			if (fahDevice != null) {
-				xDevice.channels.forEach(xChannel -> {
-					AbstractFahChannel fahChannel = fahDevice.getChannel(xChannel.i);
-					if (fahChannel != null) {
-						Stream.concat(xChannel.inputs.stream(), xChannel.outputs.stream()).forEach(xDataPoint -> {
-							String value = xDataPoint.values.stream().findFirst().orElse(null);
-							fahChannel.setDataPoint(xDataPoint.i, value);
-						});
-					}
-				});
-				xDevice.parameters.forEach(xParameter -> {
-					fahDevice.setParameter(xParameter.i, xParameter.value);
-				});
+		try {
+			XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(xml));
+			try {
+				if (nextChildElement(reader)) {
+					processUpdateProject(reader, updateHandler, receivedMillis);
+				}
+			} finally {
+				reader.close();
 			}
-		});
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
-	private static String findKV(List<PxKeyValue> keyValueList, String key) {
-		return keyValueList.stream().filter(kv -> key.equals(kv.name)).findAny().map(kv -> kv.value).orElse(null);
+	private static XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	/**
+	 * Advance to the next child element of the current element.
+	 *
+	 * @return <code>true</code> if positioned on the start of a child element, <code>false</code> if positioned on the end of the
+	 * current element.
+	 */
+	private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>defaultValue</code> if <code>value</code> is <code>null</code> or not an integer.
+	 */
+	private static int parseInt(String value, int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Not an integer: " + value);
+			return defaultValue;
+		}
 	}
 
 	private static Integer parseId(String id) {
 		return id != null ? Integer.parseInt(id, 16) : null;
 	}
 
+	private static void processProjectChannel(XMLStreamReader reader, FahProject fahProject, FahDevice fahDevice,
+			FahChannelFactory channelFactory) throws XMLStreamException {
+		String channelId = reader.getAttributeValue(null, "i");
+		String displayName = null;
+		Integer functionId = null;
+		// attributes may follow the data points, so the channel is created at the end of its element
+		Map<String, String> dataPoints = new LinkedHashMap<>();
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("attribute".equals(localName)) {
+				String name = reader.getAttributeValue(null, "name");
+				String value = reader.getElementText();
+				if (displayName == null && "displayName".equals(name)) {
+					displayName = value;
+				} else if (functionId == null && "functionId".equals(name)) {
+					functionId = parseId(value);
+				}
+			} else if ("inputs".equals(localName) || "outputs".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("dataPoint".equals(reader.getLocalName())) {
+						String dataPointId = reader.getAttributeValue(null, "i");
+						dataPoints.put(dataPointId, readFirstValue(reader));
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+		AbstractFahChannel fahChannel = channelFactory.createChannel(fahDevice, channelId, fahProject.getFunctionById(functionId));
+		fahChannel.setName(displayName);
+		// attached before the data points are set, so their values go straight into the datapoint table
+		fahProject.addPart(fahChannel);
+		dataPoints.forEach(fahChannel::setDataPoint);
+	}
+
+	private static void processProjectDevice(XMLStreamReader reader, FahProject fahProject, FahChannelFactory channelFactory,
+			FahDeviceProcessor deviceProcessor) throws XMLStreamException {
+		FahDevice fahDevice = new FahDevice(reader.getAttributeValue(null, "serialNumber"));
+		fahDevice.setDeviceId(reader.getAttributeValue(null, "deviceId"));
+		fahDevice.setType(fahProject.getStringById(parseId(reader.getAttributeValue(null, "nameId"))));
+		fahDevice.setFunction(fahProject.getFunctionById(parseId(reader.getAttributeValue(null, "functionId"))));
+		fahProject.addPart(fahDevice);
+		boolean nameFound = false;
+		boolean roomFound = false;
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("attribute".equals(localName)) {
+				String name = reader.getAttributeValue(null, "name");
+				String value = reader.getElementText();
+				if (!nameFound && "displayName".equals(name)) {
+					fahDevice.setName(value);
+					nameFound = true;
+				} else if (!roomFound && "room".equals(name)) {
+					fahDevice.setRoom(fahProject.getRoomById(parseId(value)));
+					roomFound = true;
+				}
+			} else if ("channels".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("channel".equals(reader.getLocalName())) {
+						processProjectChannel(reader, fahProject, fahDevice, channelFactory);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("parameters".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("parameter".equals(reader.getLocalName())) {
+						String parameterId = reader.getAttributeValue(null, "i");
+						fahDevice.setParameter(parameterId, readLastValue(reader));
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+		deviceProcessor.processDevice(fahDevice);
+	}
+
+	private static void processProjectFloor(XMLStreamReader reader, FahProject fahProject) throws XMLStreamException {
+		FahFloor fahFloor = new FahFloor(parseId(reader.getAttributeValue(null, "uid")));
+		fahFloor.setName(reader.getAttributeValue(null, "name"));
+		String level = reader.getAttributeValue(null, "level");
+		fahFloor.setLevel(parseInt(level, 0));
+		while (nextChildElement(reader)) {
+			if ("room".equals(reader.getLocalName())) {
+				FahRoom fahRoom = new FahRoom(fahFloor, parseId(reader.getAttributeValue(null, "uid")));
+				fahRoom.setName(reader.getAttributeValue(null, "name"));
+				fahProject.addPart(fahRoom);
+			}
+			skipElement(reader);
+		}
+		fahProject.addPart(fahFloor);
+	}
+
+	/**
+	 * Single pass over the project XML; the sections are expected in the order the SysAP emits them (strings before definitions
+	 * before floorplan before devices), because references are resolved as soon as an element is read.
+	 */
+	private static void processProjectProject(XMLStreamReader reader, FahProject fahProject, FahChannelFactory channelFactory,
+			FahDeviceProcessor deviceProcessor) throws XMLStreamException {
+		fahProject.setMrhaVersion(reader.getAttributeValue(null, "mrhaVersion"));
+		fahProject.setMrhaBuild(reader.getAttributeValue(null, "mrhaBuild"));
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("sysap".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("value".equals(reader.getLocalName())) {
+						String name = reader.getAttributeValue(null, "name");
+						fahProject.setFahSysapValue(name, reader.getElementText());
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("config".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("var".equals(reader.getLocalName())) {
+						String name = reader.getAttributeValue(null, "name");
+						fahProject.setFahConfigValue(name, reader.getElementText());
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("strings".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("string".equals(reader.getLocalName())) {
+						FahString fahString = new FahString(parseId(reader.getAttributeValue(null, "nameId")));
+						fahString.setValue(reader.getElementText());
+						fahProject.addPart(fahString);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("definitions".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("functions".equals(reader.getLocalName())) {
+						while (nextChildElement(reader)) {
+							if ("function".equals(reader.getLocalName())) {
+								FahFunction fahFunction = new FahFunction(parseId(reader.getAttributeValue(null, "functionId")));
+								fahFunction.setFidName(reader.getAttributeValue(null, "name"));
+								fahFunction.setName(fahProject.getStringById(parseId(reader.getAttributeValue(null, "nameId"))));
+								fahProject.addPart(fahFunction);
+							}
+							skipElement(reader);
+						}
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("floorplan".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("floor".equals(reader.getLocalName())) {
+						processProjectFloor(reader, fahProject);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("devices".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("device".equals(reader.getLocalName())) {
+						processProjectDevice(reader, fahProject, channelFactory, deviceProcessor);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private static void processUpdateChannel(XMLStreamReader reader, String serialNumber, FahUpdateHandler updateHandler,
+			long receivedMillis) throws XMLStreamException {
+		String channelId = reader.getAttributeValue(null, "i");
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("inputs".equals(localName) || "outputs".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("dataPoint".equals(reader.getLocalName())) {
+						String dataPointId = reader.getAttributeValue(null, "i");
+						updateHandler.dataPoint(serialNumber, channelId, dataPointId, readFirstValue(reader), receivedMillis);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private static void processUpdateDevice(XMLStreamReader reader, FahUpdateHandler updateHandler, long receivedMillis)
+			throws XMLStreamException {
+		String serialNumber = reader.getAttributeValue(null, "serialNumber");
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("channels".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("channel".equals(reader.getLocalName())) {
+						processUpdateChannel(reader, serialNumber, updateHandler, receivedMillis);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("parameters".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("parameter".equals(reader.getLocalName())) {
+						String parameterId = reader.getAttributeValue(null, "i");
+						updateHandler.parameter(serialNumber, parameterId, readLastValue(reader), receivedMillis);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private static void processUpdateProject(XMLStreamReader reader, FahUpdateHandler updateHandler, long receivedMillis)
+			throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			String localName = reader.getLocalName();
+			if ("sysap".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("value".equals(reader.getLocalName())) {
+						String name = reader.getAttributeValue(null, "name");
+						updateHandler.sysapValue(name, reader.getElementText());
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else if ("devices".equals(localName)) {
+				while (nextChildElement(reader)) {
+					if ("device".equals(reader.getLocalName())) {
+						processUpdateDevice(reader, updateHandler, receivedMillis);
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * @return Text of the first <code>value</code> child element or <code>null</code> if there is none.
+	 */
+	private static String readFirstValue(XMLStreamReader reader) throws XMLStreamException {
+		String value = null;
+		boolean found = false;
+		while (nextChildElement(reader)) {
+			if (!found && "value".equals(reader.getLocalName())) {
+				value = reader.getElementText();
+				found = true;
+			} else {
+				skipElement(reader);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return Text of the last <code>value</code> child element or <code>null</code> if there is none.
+	 */
+	private static String readLastValue(XMLStreamReader reader) throws XMLStreamException {
+		String value = null;
+		while (nextChildElement(reader)) {
+			if ("value".equals(reader.getLocalName())) {
+				value = reader.getElementText();
+			} else {
+				skipElement(reader);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Skip the current element including all of its children.
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
 
 	private FahXmlProcessor() {
 		super();
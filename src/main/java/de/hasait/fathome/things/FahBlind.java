@@ -16,7 +16,10 @@
 
 package de.hasait.fathome.things;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.hasait.fathome.project.AbstractFahChannel;
+import de.hasait.fathome.project.FahAggregateValues;
 import de.hasait.fathome.project.FahDevice;
 import de.hasait.fathome.project.FahFunction;
 
@@ -35,6 +38,9 @@ public class FahBlind extends AbstractFahChannel {
 	private final String blindMoveStateDp;
 	private final String blindPosStateDp;
 
+	private volatile int position;
+	private volatile int moveState;
+
 	public FahBlind(FahDevice device, String id, FahFunction function) {
 		this(device, id, function, DEFAULT_BLIND_DP, DEFAULT_BLIND_STOP_DP, DEFAULT_BLIND_MOVE_STATE_DP, DEFAULT_BLIND_POS_STATE_DP);
 	}
@@ -47,36 +53,76 @@ public FahBlind(FahDevice device, String id, FahFunction function, String blindD
 		this.blindStopDatapoint = blindStopDatapoint;
 		this.blindMoveStateDp = blindMoveStateDp;
 		this.blindPosStateDp = blindPosStateDp;
+
+		// move commands (0 = up; 1 = down) are confirmed by the move state (2 = moving up; 3 = moving down), unless the blind is
+		// at that end already; stop commands are not reported
+		setConfirmingDataPoint(blindDatapoint, blindMoveStateDp, value -> "1".equals(value) //
+				? position < 100 ? "3" : null //
+				: position > 0 ? "2" : null);
+	}
+
+	/**
+	 * Wait for the blind to report the position, see {@link #awaitDataPoint(String, java.util.function.Predicate, long)}.
+	 *
+	 * @param position 0..100 (0 = up; 100 = down).
+	 */
+	public CompletableFuture<Void> awaitPosition(int position, long timeoutMillis) {
+		return awaitDataPoint(blindPosStateDp, value -> value != null && parseIntValue(value, -1) == position, timeoutMillis).thenApply(value -> null);
 	}
 
 	/**
 	 * @return 0..100 (0 = up; 100 = down).
 	 */
 	public int getPosition() {
-		String state = getDataPointValue(blindPosStateDp);
-		return state == null ? 0 : Integer.parseInt(state);
+		return position;
 	}
 
 	public boolean isMovingDown() {
-		String state = getDataPointValue(blindMoveStateDp);
-		return "3".equals(state);
+		return moveState == 3;
 	}
 
 	public boolean isMovingUp() {
-		String state = getDataPointValue(blindMoveStateDp);
-		return "2".equals(state);
+		return moveState == 2;
 	}
 
 	public void moveDown() {
 		rpcSetDataPoint(blindDatapoint, "1");
 	}
 
+	public CompletableFuture<Void> moveDownAsync() {
+		return rpcSetDataPointAsync(blindDatapoint, "1");
+	}
+
 	public void moveUp() {
 		rpcSetDataPoint(blindDatapoint, "0");
 	}
 
+	public CompletableFuture<Void> moveUpAsync() {
+		return rpcSetDataPointAsync(blindDatapoint, "0");
+	}
+
 	public void stop() {
 		rpcSetDataPoint(blindStopDatapoint, "1");
 	}
 
+	public CompletableFuture<Void> stopAsync() {
+		return rpcSetDataPointAsync(blindStopDatapoint, "1");
+	}
+
+	@Override
+	protected FahAggregateValues getAggregateContribution() {
+		return FahAggregateValues.ofBlind(isMovingUp() || isMovingDown(), position);
+	}
+
+	@Override
+	protected void decodeDataPoint(String dataPointId, String value) {
+		super.decodeDataPoint(dataPointId, value);
+
+		if (blindPosStateDp.equals(dataPointId)) {
+			position = parseIntValue(value, 0);
+		} else if (blindMoveStateDp.equals(dataPointId)) {
+			moveState = parseIntValue(value, 0);
+		}
+	}
+
 }
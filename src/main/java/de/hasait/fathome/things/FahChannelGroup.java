@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.things;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import de.hasait.fathome.comm.FahRpcLane;
+import de.hasait.fathome.project.AbstractFahChannel;
+import de.hasait.fathome.project.FahFloor;
+import de.hasait.fathome.project.FahRoom;
+
+/**
+ * Set of channels commands can be issued to at once.
+ * <p>
+ * Commands are sent to all matching channels without waiting for the previous answer, so the round trips overlap. Each command
+ * applies only to the channels supporting it, e.g. {@link #switchAllOff()} to {@link FahSwitch}es including
+ * {@link FahDimmer}s; the others are skipped.
+ * <p>
+ * Commands are issued in {@link FahRpcLane#BULK} unless another lane is set with {@link #setLane(FahRpcLane)}.
+ */
+public class FahChannelGroup {
+
+	public static FahChannelGroup of(FahFloor floor) {
+		return new FahChannelGroup(floor.getProject().getChannelsByFloor(floor));
+	}
+
+	public static FahChannelGroup of(FahRoom room) {
+		return new FahChannelGroup(room.getProject().getChannelsByRoom(room));
+	}
+
+	private final List<AbstractFahChannel> channels;
+
+	private FahRpcLane lane = FahRpcLane.BULK;
+
+	public FahChannelGroup(Collection<? extends AbstractFahChannel> channels) {
+		super();
+
+		this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+	}
+
+	/**
+	 * Issue a command to all channels of the given type.
+	 *
+	 * @return Completes when all commands completed, successfully or not.
+	 */
+	public <T extends AbstractFahChannel> CompletableFuture<FahGroupResult> apply(Class<T> type,
+			Function<? super T, CompletableFuture<Void>> command) {
+		long start = System.nanoTime();
+		List<CompletableFuture<FahGroupResult.Outcome>> outcomes = new ArrayList<>();
+		for (AbstractFahChannel channel : channels) {
+			if (type.isInstance(channel)) {
+				outcomes.add(issue(channel, () -> lane.run(() -> command.apply(type.cast(channel)))));
+			}
+		}
+		return CompletableFuture.allOf(outcomes.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<FahGroupResult.Outcome> results = new ArrayList<>();
+			outcomes.forEach(outcome -> results.add(outcome.join()));
+			return new FahGroupResult(results, millisSince(start));
+		});
+	}
+
+	/**
+	 * @param level 0..100 (0 = off; 100 = on).
+	 */
+	public CompletableFuture<FahGroupResult> dimAll(int level) {
+		if (level < 0 || level > 100) {
+			throw new IllegalArgumentException("level not in range [0, 100]: " + level);
+		}
+		return apply(FahDimmer.class, dimmer -> dimmer.setDimLevelAsync(level));
+	}
+
+	public List<AbstractFahChannel> getChannels() {
+		return channels;
+	}
+
+	public FahRpcLane getLane() {
+		return lane;
+	}
+
+	public CompletableFuture<FahGroupResult> moveAllBlindsDown() {
+		return apply(FahBlind.class, FahBlind::moveDownAsync);
+	}
+
+	public CompletableFuture<FahGroupResult> moveAllBlindsUp() {
+		return apply(FahBlind.class, FahBlind::moveUpAsync);
+	}
+
+	public void setLane(FahRpcLane lane) {
+		this.lane = lane;
+	}
+
+	public CompletableFuture<FahGroupResult> stopAllBlinds() {
+		return apply(FahBlind.class, FahBlind::stopAsync);
+	}
+
+	public CompletableFuture<FahGroupResult> switchAllOff() {
+		return apply(FahSwitch.class, FahSwitch::switchOffAsync);
+	}
+
+	public CompletableFuture<FahGroupResult> switchAllOn() {
+		return apply(FahSwitch.class, FahSwitch::switchOnAsync);
+	}
+
+	private static CompletableFuture<FahGroupResult.Outcome> issue(AbstractFahChannel channel,
+			Supplier<CompletableFuture<Void>> command) {
+		long start = System.nanoTime();
+		CompletableFuture<Void> future;
+		try {
+			future = command.get();
+		} catch (RuntimeException e) {
+			return CompletableFuture.completedFuture(new FahGroupResult.Outcome(channel, e, millisSince(start)));
+		}
+		return future.handle((ignored, failure) -> {
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+			return new FahGroupResult.Outcome(channel, cause, millisSince(start));
+		});
+	}
+
+	private static long millisSince(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+}
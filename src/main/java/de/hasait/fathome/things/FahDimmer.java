@@ -16,6 +16,10 @@
 
 package de.hasait.fathome.things;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+import de.hasait.fathome.project.FahAggregateValues;
 import de.hasait.fathome.project.FahDevice;
 import de.hasait.fathome.project.FahFunction;
 
@@ -25,11 +29,18 @@
 public class FahDimmer extends FahSwitch {
 
 	static final String DEFAULT_DIM_DP = "idp0002";
+	static final String DEFAULT_DIM_STATE_DP = "odp0001";
 
 	private final String dimDatapoint;
 
+	private volatile int dimLevel;
+
 	public FahDimmer(FahDevice device, String id, FahFunction function) {
 		this(device, id, function, DEFAULT_SWITCH_DP, DEFAULT_DIM_DP);
+
+		setConfirmingDataPoint(DEFAULT_SWITCH_DP, DEFAULT_SWITCH_STATE_DP);
+		// the dim level is reported step by step while ramping
+		setConfirmingDataPoint(DEFAULT_DIM_DP, DEFAULT_DIM_STATE_DP, UnaryOperator.identity(), true);
 	}
 
 	public FahDimmer(FahDevice device, String id, FahFunction function, String switchDatapoint, String dimDatapoint) {
@@ -42,8 +53,7 @@ public FahDimmer(FahDevice device, String id, FahFunction function, String switc
 	 * @return 0..100 (0 = off; 100 = on).
 	 */
 	public int getDimLevel() {
-		String state = getDataPointValue(dimDatapoint);
-		return state == null ? 0 : Integer.parseInt(state);
+		return dimLevel;
 	}
 
 	/**
@@ -58,4 +68,30 @@ public void setDimLevel(int level) {
 		rpcSetDataPoint(dimDatapoint, levelAsString);
 	}
 
+	/**
+	 * @param level 0..100 (0 = off; 100 = on).
+	 */
+	public CompletableFuture<Void> setDimLevelAsync(int level) {
+		if (level < 0 || level > 100) {
+			throw new IllegalArgumentException("level not in range [0, 100]: " + level);
+		}
+
+		String levelAsString = Integer.toString(level);
+		return rpcSetDataPointAsync(dimDatapoint, levelAsString);
+	}
+
+	@Override
+	protected FahAggregateValues getAggregateContribution() {
+		return super.getAggregateContribution().plus(FahAggregateValues.ofDimmer(dimLevel));
+	}
+
+	@Override
+	protected void decodeDataPoint(String dataPointId, String value) {
+		super.decodeDataPoint(dataPointId, value);
+
+		if (dimDatapoint.equals(dataPointId)) {
+			dimLevel = parseIntValue(value, 0);
+		}
+	}
+
 }
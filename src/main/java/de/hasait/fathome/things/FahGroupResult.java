@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.things;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.hasait.fathome.project.AbstractFahChannel;
+
+/**
+ * Combined result of a command issued to a {@link FahChannelGroup}.
+ */
+public final class FahGroupResult {
+
+	private final List<Outcome> outcomes;
+	private final long durationMillis;
+
+	FahGroupResult(List<Outcome> outcomes, long durationMillis) {
+		super();
+
+		this.outcomes = Collections.unmodifiableList(outcomes);
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * @return Time from issuing the first command until the last one completed.
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public List<Outcome> getFailures() {
+		List<Outcome> failures = new ArrayList<>();
+		for (Outcome outcome : outcomes) {
+			if (!outcome.isSuccess()) {
+				failures.add(outcome);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * @return One outcome per channel the command was issued to, in group order.
+	 */
+	public List<Outcome> getOutcomes() {
+		return outcomes;
+	}
+
+	public boolean isSuccess() {
+		for (Outcome outcome : outcomes) {
+			if (!outcome.isSuccess()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return outcomes.size() + " channels, " + getFailures().size() + " failed, " + durationMillis + "ms";
+	}
+
+	/**
+	 * Outcome of the command for a single channel.
+	 */
+	public static final class Outcome {
+
+		private final AbstractFahChannel channel;
+		private final Throwable failure;
+		private final long durationMillis;
+
+		Outcome(AbstractFahChannel channel, Throwable failure, long durationMillis) {
+			super();
+
+			this.channel = channel;
+			this.failure = failure;
+			this.durationMillis = durationMillis;
+		}
+
+		public AbstractFahChannel getChannel() {
+			return channel;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		/**
+		 * @return <code>null</code> if the command succeeded.
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		public boolean isSuccess() {
+			return failure == null;
+		}
+
+		@Override
+		public String toString() {
+			return channel.getName() + ": " + (failure == null ? "ok" : failure) + " (" + durationMillis + "ms)";
+		}
+
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package de.hasait.fathome.things;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.hasait.fathome.project.AbstractFahChannel;
 import de.hasait.fathome.project.FahDevice;
 import de.hasait.fathome.project.FahFunction;
@@ -43,4 +45,8 @@ public void activate() {
 		rpcSetDataPoint(activateDatapoint, "1");
 	}
 
+	public CompletableFuture<Void> activateAsync() {
+		return rpcSetDataPointAsync(activateDatapoint, "1");
+	}
+
 }
@@ -16,7 +16,10 @@
 
 package de.hasait.fathome.things;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.hasait.fathome.project.AbstractFahChannel;
+import de.hasait.fathome.project.FahAggregateValues;
 import de.hasait.fathome.project.FahDevice;
 import de.hasait.fathome.project.FahFunction;
 
@@ -26,11 +29,16 @@
 public class FahSwitch extends AbstractFahChannel {
 
 	static final String DEFAULT_SWITCH_DP = "idp0000";
+	static final String DEFAULT_SWITCH_STATE_DP = "odp0000";
 
 	private final String switchDatapoint;
 
+	private volatile boolean on;
+
 	public FahSwitch(FahDevice device, String id, FahFunction function) {
 		this(device, id, function, DEFAULT_SWITCH_DP);
+
+		setConfirmingDataPoint(DEFAULT_SWITCH_DP, DEFAULT_SWITCH_STATE_DP);
 	}
 
 	public FahSwitch(FahDevice device, String id, FahFunction function, String switchDatapoint) {
@@ -39,29 +47,65 @@ public FahSwitch(FahDevice device, String id, FahFunction function, String switc
 		this.switchDatapoint = switchDatapoint;
 	}
 
+	/**
+	 * Wait for the switch to report the state, see {@link #awaitDataPoint(String, java.util.function.Predicate, long)}.
+	 */
+	public CompletableFuture<Void> awaitSwitchState(boolean state, long timeoutMillis) {
+		return awaitDataPoint(switchDatapoint, value -> value != null && "1".equals(value) == state, timeoutMillis).thenApply(value -> null);
+	}
+
 	public boolean isOff() {
 		return !isOn();
 	}
 
 	public boolean isOn() {
-		String state = getDataPointValue(switchDatapoint);
-		return "1".equals(state);
+		return on;
 	}
 
 	public void setSwitchState(boolean state) {
 		rpcSetDataPoint(switchDatapoint, state ? "1" : "0");
 	}
 
+	public CompletableFuture<Void> setSwitchStateAsync(boolean state) {
+		return rpcSetDataPointAsync(switchDatapoint, state ? "1" : "0");
+	}
+
 	public void switchOff() {
 		setSwitchState(false);
 	}
 
+	public CompletableFuture<Void> switchOffAsync() {
+		return setSwitchStateAsync(false);
+	}
+
 	public void switchOn() {
 		setSwitchState(true);
 	}
 
+	public CompletableFuture<Void> switchOnAsync() {
+		return setSwitchStateAsync(true);
+	}
+
 	public void toggle() {
 		setSwitchState(!isOn());
 	}
 
+	public CompletableFuture<Void> toggleAsync() {
+		return setSwitchStateAsync(!isOn());
+	}
+
+	@Override
+	protected FahAggregateValues getAggregateContribution() {
+		return FahAggregateValues.ofSwitch(on);
+	}
+
+	@Override
+	protected void decodeDataPoint(String dataPointId, String value) {
+		super.decodeDataPoint(dataPointId, value);
+
+		if (switchDatapoint.equals(dataPointId)) {
+			on = "1".equals(value);
+		}
+	}
+
 }
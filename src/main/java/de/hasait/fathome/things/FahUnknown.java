@@ -17,6 +17,7 @@
 package de.hasait.fathome.things;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import de.hasait.fathome.project.AbstractFahChannel;
 import de.hasait.fathome.project.FahDevice;
@@ -51,4 +52,9 @@ public void rpcSetDataPoint(String dataPointId, String value) {
 		super.rpcSetDataPoint(dataPointId, value);
 	}
 
+	@Override
+	public CompletableFuture<Void> rpcSetDataPointAsync(String dataPointId, String value) {
+		return super.rpcSetDataPointAsync(dataPointId, value);
+	}
+
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rocks.xmpp.extensions.rpc.RpcException;
+import rocks.xmpp.extensions.rpc.model.Value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FahBatchingCommunicationTest {
+
+	private static final String SET = FahBatchingCommunication.SET_DATAPOINT_METHOD;
+
+	private ScheduledThreadPoolExecutor scheduler;
+	private FakeCommunication delegate;
+	private FahBatchingCommunication batching;
+
+	@Before
+	public void setUp() {
+		scheduler = new ScheduledThreadPoolExecutor(1);
+		scheduler.setRemoveOnCancelPolicy(true);
+		delegate = new FakeCommunication();
+		// flushed explicitly, the window never expires within a test
+		batching = new FahBatchingCommunication(delegate, scheduler, 60000, 3);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void callsOfTheWindowAreSentAsOneMulticall() throws Exception {
+		CompletableFuture<Value> first = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		CompletableFuture<Value> second = batching.rpcCallAsync(SET, Value.of("b/ch0000/idp0000"), Value.of("0"));
+		assertTrue(delegate.calls.isEmpty());
+
+		batching.flush();
+
+		assertEquals(1, delegate.calls.size());
+		Call multicall = delegate.calls.get(0);
+		assertEquals("system.multicall", multicall.methodName);
+		List<Value> entries = multicall.parameters[0].getAsArray();
+		assertEquals(2, entries.size());
+		assertEquals(SET, entries.get(0).getAsMap().get("methodName").getAsString());
+		assertEquals("b/ch0000/idp0000", entries.get(1).getAsMap().get("params").getAsArray().get(0).getAsString());
+
+		multicall.future.complete(Value.of(Arrays.asList(Value.of(list(Value.of("ok1"))), Value.of(list(Value.of("ok2"))))));
+		assertEquals("ok1", first.get().getAsString());
+		assertEquals("ok2", second.get().getAsString());
+		assertEquals(1, batching.getMulticallCount());
+		assertEquals(2, batching.getBatchedCallCount());
+	}
+
+	@Test
+	public void fullBatchIsSentWithoutWaitingForTheWindow() {
+		for (int i = 0; i < 3; i++) {
+			batching.rpcCallAsync(SET, Value.of("a/ch0000/idp000" + i), Value.of("1"));
+		}
+
+		assertEquals(1, delegate.calls.size());
+		assertEquals("system.multicall", delegate.calls.get(0).methodName);
+		assertTrue(scheduler.getQueue().isEmpty());
+	}
+
+	@Test
+	public void singleCallIsSentDirectly() throws Exception {
+		CompletableFuture<Value> call = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		batching.flush();
+
+		assertEquals(1, delegate.calls.size());
+		assertEquals(SET, delegate.calls.get(0).methodName);
+		delegate.calls.get(0).future.complete(Value.of("ok"));
+		assertEquals("ok", call.get().getAsString());
+		assertEquals(0, batching.getMulticallCount());
+	}
+
+	@Test
+	public void otherMethodsPassThrough() {
+		batching.rpcCallAsync("RemoteInterface.getAll", Value.of("de"));
+
+		assertEquals(1, delegate.calls.size());
+		assertEquals("RemoteInterface.getAll", delegate.calls.get(0).methodName);
+	}
+
+	@Test
+	public void faultOfOneCallFailsOnlyThatCall() throws Exception {
+		CompletableFuture<Value> first = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		CompletableFuture<Value> second = batching.rpcCallAsync(SET, Value.of("x/ch0000/idp0000"), Value.of("1"));
+		batching.flush();
+
+		Map<String, Value> fault = new HashMap<>();
+		fault.put("faultCode", Value.of(4));
+		fault.put("faultString", Value.of("unknown device"));
+		delegate.calls.get(0).future.complete(Value.of(Arrays.asList(Value.of(list(Value.of("ok"))), Value.of(fault))));
+
+		assertEquals("ok", first.get().getAsString());
+		try {
+			second.join();
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause().getCause() instanceof RpcException);
+			assertEquals(4, ((RpcException) e.getCause().getCause()).getFaultCode());
+		}
+		assertEquals(0, batching.getFallbackCount());
+		assertTrue(batching.isMulticallSupported());
+	}
+
+	@Test
+	public void transientMulticallFailureFailsTheBatchWithoutResending() throws Exception {
+		CompletableFuture<Value> first = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		CompletableFuture<Value> second = batching.rpcCallAsync(SET, Value.of("b/ch0000/idp0000"), Value.of("1"));
+		batching.flush();
+
+		RuntimeException failure = new RuntimeException("timeout");
+		delegate.calls.get(0).future.completeExceptionally(failure);
+
+		assertEquals(1, delegate.calls.size());
+		for (CompletableFuture<Value> call : Arrays.asList(first, second)) {
+			try {
+				call.get();
+				fail();
+			} catch (ExecutionException e) {
+				assertSame(failure, e.getCause());
+			}
+		}
+		assertEquals(0, batching.getFallbackCount());
+		assertTrue(batching.isMulticallSupported());
+
+		batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("0"));
+		batching.rpcCallAsync(SET, Value.of("b/ch0000/idp0000"), Value.of("0"));
+		batching.flush();
+		assertEquals("system.multicall", delegate.calls.get(1).methodName);
+	}
+
+	@Test
+	public void unknownMethodFaultDisablesBatching() throws Exception {
+		CompletableFuture<Value> first = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		batching.rpcCallAsync(SET, Value.of("b/ch0000/idp0000"), Value.of("1"));
+		batching.flush();
+
+		delegate.calls.get(0).future.completeExceptionally(new CompletionException(new RpcException(-32601, "method not found")));
+
+		assertFalse(batching.isMulticallSupported());
+		assertEquals(3, delegate.calls.size());
+		delegate.calls.get(1).future.complete(Value.of("ok"));
+		assertEquals("ok", first.get().getAsString());
+
+		batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("0"));
+		assertEquals(4, delegate.calls.size());
+		assertEquals(SET, delegate.calls.get(3).methodName);
+	}
+
+	@Test
+	public void failureOfIndividualCallIsPassedOn() throws Exception {
+		CompletableFuture<Value> call = batching.rpcCallAsync(SET, Value.of("a/ch0000/idp0000"), Value.of("1"));
+		batching.flush();
+
+		RuntimeException failure = new RuntimeException("rejected");
+		delegate.calls.get(0).future.completeExceptionally(failure);
+
+		try {
+			call.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	private static List<Value> list(Value... values) {
+		return Arrays.asList(values);
+	}
+
+	private static final class Call {
+
+		private final String methodName;
+		private final Value[] parameters;
+		private final CompletableFuture<Value> future = new CompletableFuture<>();
+
+		private Call(String methodName, Value[] parameters) {
+			this.methodName = methodName;
+			this.parameters = parameters;
+		}
+
+	}
+
+	private static final class FakeCommunication implements FahCommunication {
+
+		private final List<Call> calls = new ArrayList<>();
+
+		@Override
+		public Value rpcCall(String methodName, Value... parameters) {
+			return rpcCallAsync(methodName, parameters).join();
+		}
+
+		@Override
+		public CompletableFuture<Value> rpcCallAsync(String methodName, Value... parameters) {
+			Call call = new Call(methodName, parameters);
+			calls.add(call);
+			return call.future;
+		}
+
+	}
+
+}
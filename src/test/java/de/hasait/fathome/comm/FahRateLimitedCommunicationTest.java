@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.comm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rocks.xmpp.extensions.rpc.model.Value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FahRateLimitedCommunicationTest {
+
+	private ScheduledExecutorService scheduler;
+	private List<String> sent;
+	private FahCommunication delegate;
+
+	@Before
+	public void setUp() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		sent = Collections.synchronizedList(new ArrayList<>());
+		delegate = (methodName, parameters) -> {
+			sent.add(methodName);
+			return Value.of(methodName);
+		};
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void burstIsSentAtOnceAndTheRestIsQueued() throws Exception {
+		FahRateLimitedCommunication limiter = new FahRateLimitedCommunication(delegate, scheduler, 5, 3);
+
+		List<CompletableFuture<Value>> futures = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			futures.add(limiter.rpcCallAsync("call" + i));
+		}
+
+		assertEquals(3, sent.size());
+		assertEquals(2, limiter.getQueueDepth(FahRpcLane.INTERACTIVE));
+		allOf(futures).get(5, TimeUnit.SECONDS);
+		assertEquals(5, sent.size());
+		assertEquals(0, limiter.getQueueDepth(FahRpcLane.INTERACTIVE));
+		assertEquals(5, limiter.getCallCount(FahRpcLane.INTERACTIVE));
+	}
+
+	@Test
+	public void queuedInteractiveCallsOvertakeQueuedBulkCalls() throws Exception {
+		FahRateLimitedCommunication limiter = new FahRateLimitedCommunication(delegate, scheduler, 5, 1);
+
+		List<CompletableFuture<Value>> futures = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			int index = i;
+			futures.add(FahRpcLane.BULK.run(() -> limiter.rpcCallAsync("bulk" + index)));
+		}
+		futures.add(limiter.rpcCallAsync("interactive"));
+		assertEquals(2, limiter.getQueueDepth(FahRpcLane.BULK));
+		assertEquals(1, limiter.getQueueDepth(FahRpcLane.INTERACTIVE));
+
+		allOf(futures).get(5, TimeUnit.SECONDS);
+		assertEquals("bulk0", sent.get(0));
+		assertEquals("interactive", sent.get(1));
+		assertEquals("bulk1", sent.get(2));
+		assertEquals("bulk2", sent.get(3));
+	}
+
+	@Test
+	public void callsOfConcurrentIssuersKeepTheirOrder() throws Exception {
+		FahRateLimitedCommunication limiter = new FahRateLimitedCommunication(delegate, scheduler, 1000000, 1000);
+		int threadCount = 4;
+		int callCount = 5000;
+		List<CompletableFuture<Value>> futures = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(threadCount);
+		for (int t = 0; t < threadCount; t++) {
+			String prefix = t + ":";
+			new Thread(() -> {
+				for (int i = 0; i < callCount; i++) {
+					futures.add(limiter.rpcCallAsync(prefix + i));
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await(10, TimeUnit.SECONDS);
+		allOf(futures).get(10, TimeUnit.SECONDS);
+
+		int[] last = new int[threadCount];
+		for (String methodName : new ArrayList<>(sent)) {
+			String[] parts = methodName.split(":");
+			int thread = Integer.parseInt(parts[0]);
+			int index = Integer.parseInt(parts[1]);
+			assertEquals(methodName, last[thread], index);
+			last[thread]++;
+		}
+		assertEquals(threadCount * callCount, sent.size());
+	}
+
+	@Test
+	public void failureOfTheDelegateIsPassedOn() throws Exception {
+		RuntimeException failure = new RuntimeException("offline");
+		FahRateLimitedCommunication limiter = new FahRateLimitedCommunication((methodName, parameters) -> {
+			throw failure;
+		}, scheduler, 20, 1);
+
+		try {
+			limiter.rpcCallAsync("call").get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+		try {
+			limiter.rpcCall("call");
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rateMustBePositive() {
+		new FahRateLimitedCommunication(delegate, scheduler, 0, 1);
+	}
+
+	private static CompletableFuture<Void> allOf(List<CompletableFuture<Value>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+}
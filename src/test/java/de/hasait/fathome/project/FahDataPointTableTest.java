@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FahDataPointTableTest {
+
+	private FahDataPointTable table;
+	private FahDevice device;
+
+	@Before
+	public void setUp() {
+		// chunks of 4 handles
+		table = new FahDataPointTable(2);
+		device = new FahDevice("ABB1");
+	}
+
+	@Test
+	public void changesAreStampedWithIncreasingSequenceNumbers() {
+		int first = allocate("pm0000", "1");
+		int second = allocate("pm0001", "2");
+
+		assertEquals(1, table.getSequence(first));
+		assertEquals(2, table.getSequence(second));
+		assertEquals(2, table.getSequence());
+		assertSame(device, table.getDevice(first));
+		assertTrue(table.isParameter(first));
+		assertEquals("pm0001", table.getId(second));
+	}
+
+	@Test
+	public void unchangedReportKeepsSequenceButRefreshesTimestamp() throws Exception {
+		int handle = allocate("pm0000", "1");
+		long sequence = table.getSequence(handle);
+		long timestamp = table.getTimestamp(handle);
+		Thread.sleep(5);
+
+		assertEquals("1", table.setValue(handle, "1"));
+
+		assertEquals(sequence, table.getSequence(handle));
+		assertTrue(table.getTimestamp(handle) > timestamp);
+	}
+
+	@Test
+	public void timestampIsTheReceiveTimePassedIn() {
+		int handle = allocate("pm0000", "1");
+
+		table.setValue(handle, "2", 1000L);
+
+		assertEquals(1000L, table.getTimestamp(handle));
+		assertEquals(1000L, table.changesSince(0).get(0).getTimestamp());
+	}
+
+	@Test
+	public void changesSinceReturnsOnlyNewerChangesInSequenceOrder() {
+		int[] handles = new int[10];
+		for (int i = 0; i < handles.length; i++) {
+			handles[i] = allocate("pm000" + i, "0");
+		}
+		long sequence = table.getSequence();
+		table.setValue(handles[9], "9");
+		table.setValue(handles[2], "2");
+		table.setValue(handles[9], "99");
+
+		List<FahDataPointChange> changes = table.changesSince(sequence);
+
+		assertEquals(2, changes.size());
+		assertEquals("pm0002", changes.get(0).getId());
+		assertEquals("pm0009", changes.get(1).getId());
+		assertEquals("99", changes.get(1).getValue());
+		assertTrue(changes.get(0).getSequence() < changes.get(1).getSequence());
+		assertTrue(table.changesSince(table.getSequence()).isEmpty());
+		assertEquals(10, table.changesSince(0).size());
+	}
+
+	@Test
+	public void releasedHandleIsReused() {
+		int handle = allocate("pm0000", "1");
+		long releaseCount = table.getReleaseCount();
+
+		table.countReleases(1);
+		table.release(handle);
+
+		assertEquals(releaseCount + 1, table.getReleaseCount());
+		assertNull(table.getValue(handle));
+		assertNull(table.getDevice(handle));
+		assertTrue(table.changesSince(0).isEmpty());
+		assertEquals(handle, allocate("pm0001", "2"));
+	}
+
+	@Test
+	public void snapshotIsNotAffectedByLaterWrites() {
+		int handle = allocate("pm0000", "1");
+		FahDataPointTable snapshot = table.snapshot();
+
+		table.setValue(handle, "2");
+		int added = allocate("pm0001", "3");
+
+		assertTrue(snapshot.isReadOnly());
+		assertEquals("1", snapshot.getValue(handle));
+		assertEquals("2", table.getValue(handle));
+		assertEquals(1, snapshot.getSequence());
+		assertEquals(1, snapshot.changesSince(0).size());
+		assertEquals(-1, snapshot.findHandle(device, "pm0001", added));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void snapshotIsReadOnly() {
+		allocate("pm0000", "1");
+		table.snapshot().setValue(0, "2");
+	}
+
+	private int allocate(String id, String value) {
+		int handle = table.allocate(device, id);
+		table.setValue(handle, value);
+		return handle;
+	}
+
+}
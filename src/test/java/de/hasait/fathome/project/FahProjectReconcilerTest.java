@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hasait.fathome.things.FahDimmer;
+import de.hasait.fathome.things.FahSwitch;
+import de.hasait.fathome.things.FahUnknown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FahProjectReconcilerTest {
+
+	private static final FahChannelFactory CHANNEL_FACTORY = (device, id, function) -> {
+		String fidName = function != null ? function.getFidName() : null;
+		if ("FID_DimmingActuator".equals(fidName)) {
+			return new FahDimmer(device, id, function);
+		}
+		if ("FID_SwitchingActuator".equals(fidName)) {
+			return new FahSwitch(device, id, function);
+		}
+		return new FahUnknown(device, id, function);
+	};
+
+	private FahProject project;
+
+	@Before
+	public void setUp() throws IOException {
+		project = load("project-v1.xml");
+	}
+
+	@Test
+	public void existingObjectsAreUpdatedInPlace() throws IOException {
+		AbstractFahChannel light = project.getChannel("KitchenLight");
+		FahDevice device = project.getDeviceBySerialNumber("ABB1");
+		FahRoom living = project.getRoomById(2);
+
+		project.reconcile(load("project-v2.xml"));
+
+		assertNull(project.getChannel("KitchenLight"));
+		assertSame(light, project.getChannel("KitchenLamp"));
+		assertSame(device, project.getDeviceBySerialNumber("ABB1"));
+		assertSame(device, light.getDevice());
+		assertSame(living, project.getRoomById(2));
+		assertEquals(2, living.getFloor().getId());
+		assertEquals("Bedroom", project.getRoomById(3).getName());
+	}
+
+	@Test
+	public void valueChangesReachListeners() throws IOException {
+		FahDimmer dimmer = (FahDimmer) project.getChannel("LivingDimmer");
+		List<String> changes = new ArrayList<>();
+		dimmer.addDataPointListener((channel, dataPointId, oldValue, newValue) -> changes
+				.add(dataPointId + ":" + oldValue + "->" + newValue));
+
+		project.reconcile(load("project-v2.xml"));
+
+		assertEquals(60, dimmer.getDimLevel());
+		assertEquals(Collections.singletonList("idp0002:55->60"), changes);
+	}
+
+	@Test
+	public void newObjectsAreAdoptedAndVanishedOnesRemoved() throws IOException {
+		FahDevice device = project.getDeviceBySerialNumber("ABB1");
+
+		project.reconcile(load("project-v2.xml"));
+
+		AbstractFahChannel newChannel = project.getChannel("NewOne");
+		assertNotNull(newChannel);
+		assertSame(device, newChannel.getDevice());
+		assertSame(newChannel, device.getChannel("ch0002"));
+		assertNull(project.getDeviceBySerialNumber("ABB2"));
+		assertNotNull(project.getDeviceBySerialNumber("ABB3"));
+		assertTrue(project.getChannels(FahSwitch.class).contains(newChannel));
+	}
+
+	@Test
+	public void adoptedRoomOnlyContainsLiveDevices() throws IOException {
+		FahDevice device = project.getDeviceBySerialNumber("ABB1");
+
+		project.reconcile(load("project-v2.xml"));
+
+		FahRoom office = project.getRoomById(4);
+		assertSame(office, device.getRoom());
+		assertEquals(Collections.singleton(device), office.getDevices());
+		// KitchenLamp, LivingDimmer and NewOne
+		assertEquals(3, office.getAggregates().getValues().getSwitchCount());
+		assertEquals(0, project.getRoomById(1).getAggregates().getValues().getSwitchCount());
+	}
+
+	@Test
+	public void valuesChangedSinceTheLoadStartKeepTheirLiveValue() throws IOException {
+		FahDimmer dimmer = (FahDimmer) project.getChannel("LivingDimmer");
+		long loadSequence = project.getSequence();
+		FahProject loadedProject = load("project-v2.xml");
+		((AbstractFahChannel) dimmer).setDataPoint("idp0002", "20");
+
+		project.reconcile(loadedProject, loadSequence);
+
+		assertEquals(20, dimmer.getDimLevel());
+		assertEquals("KitchenLamp", project.getChannel("KitchenLamp").getName());
+	}
+
+	private static FahProject load(String resourceName) throws IOException {
+		FahProject project = new FahProject(null);
+		FahXmlProcessor.processProjectXml(readResource(resourceName), project, CHANNEL_FACTORY, device -> {
+		});
+		return project;
+	}
+
+	private static String readResource(String resourceName) throws IOException {
+		try (InputStream in = FahProjectReconcilerTest.class.getResourceAsStream(resourceName);
+			 Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 by Sebastian Hasait (sebastian at hasait dot de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.hasait.fathome.project;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FahTimerWheelTest {
+
+	@Test
+	public void taskRunsNotBeforeItsDelay() throws Exception {
+		FahTimerWheel timerWheel = new FahTimerWheel("test-timer", 5, 16);
+		CountDownLatch fired = new CountDownLatch(1);
+		long startNanos = System.nanoTime();
+		long[] firedNanos = new long[1];
+
+		timerWheel.schedule(() -> {
+			firedNanos[0] = System.nanoTime();
+			fired.countDown();
+		}, 50);
+
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		assertTrue(firedNanos[0] - startNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void delayLongerThanOneRotationWaitsForItsRound() throws Exception {
+		// 4 buckets of 2ms: a delay of 60ms needs several rotations
+		FahTimerWheel timerWheel = new FahTimerWheel("test-timer", 2, 4);
+		CountDownLatch fired = new CountDownLatch(1);
+		long startNanos = System.nanoTime();
+		long[] firedNanos = new long[1];
+
+		timerWheel.schedule(() -> {
+			firedNanos[0] = System.nanoTime();
+			fired.countDown();
+		}, 60);
+
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		assertTrue(firedNanos[0] - startNanos >= TimeUnit.MILLISECONDS.toNanos(60));
+	}
+
+	@Test
+	public void cancelledTaskDoesNotRun() throws Exception {
+		FahTimerWheel timerWheel = new FahTimerWheel("test-timer", 5, 16);
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch later = new CountDownLatch(1);
+
+		FahTimerWheel.Timeout timeout = timerWheel.schedule(runs::incrementAndGet, 20);
+		timerWheel.schedule(later::countDown, 60);
+		timeout.cancel();
+
+		assertTrue(later.await(5, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void failingTaskDoesNotStopTheWheel() throws Exception {
+		FahTimerWheel timerWheel = new FahTimerWheel("test-timer", 5, 16);
+		CountDownLatch fired = new CountDownLatch(1);
+
+		timerWheel.schedule(() -> {
+			throw new IllegalStateException("expected");
+		}, 10);
+		timerWheel.schedule(fired::countDown, 30);
+
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void manyTimeoutsFireOnce() throws Exception {
+		FahTimerWheel timerWheel = new FahTimerWheel("test-timer", 1, 64);
+		int count = 10000;
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch fired = new CountDownLatch(count / 2);
+
+		for (int i = 0; i < count; i++) {
+			FahTimerWheel.Timeout timeout = timerWheel.schedule(() -> {
+				runs.incrementAndGet();
+				fired.countDown();
+			}, i % 100);
+			if (i % 2 == 1) {
+				timeout.cancel();
+			}
+		}
+
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+		assertEquals(count / 2, runs.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tickMustBePositive() {
+		new FahTimerWheel("test-timer", 0, 16);
+	}
+
+}